@@ -0,0 +1,177 @@
+import java.awt.geom.Path2D;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+
+/**
+ * Adaptive sampler for parametric and polar curves.
+ * Starts from a coarse uniform sampling of t and keeps splitting the segments whose midpoint strays
+ * from the chord by more than a fraction of a pixel. Each refinement level evaluates the midpoints of
+ * all open segments in one batch, and segments entirely off one side of the window are left alone.
+ */
+public class CurveSampler {
+    private static final int INITIAL_SEGMENTS = 64;
+    private static final int MAX_DEPTH = 12; // up to 64 * 2^12 segments over the whole range
+    private static final double FLATNESS = 0.5; // pixels
+    private static final double MAX_CHORD = 25; // pixels; long chords are split even if they look flat
+
+
+    /**
+     * A curve traced by a parameter: maps a batch of t values to {xs, ys} in graph coordinates.
+     */
+    public interface Curve {
+        double[][] trace(double[] ts);
+    }
+
+
+    // A piece of the curve between two samples, in screen coordinates.
+    private static class Segment {
+        final double t0, x0, y0, t1, x1, y1;
+
+
+        Segment(double t0, double x0, double y0, double t1, double x1, double y1) {
+            this.t0 = t0;
+            this.x0 = x0;
+            this.y0 = y0;
+            this.t1 = t1;
+            this.x1 = x1;
+            this.y1 = y1;
+        }
+    }
+
+
+    /**
+     * Samples the curve for t in [tMin, tMax].
+     *
+     * @param xMin  graph x of the left pixel column
+     * @param yMax  graph y of the top pixel row
+     * @param pixel graph units per pixel
+     * @return the curve as a polyline in screen coordinates, broken where it is undefined; refined no
+     * further once the calling thread is interrupted
+     */
+    public static Path2D.Double sample(Curve curve, double tMin, double tMax, double xMin, double yMax, double pixel, int width, int height) {
+        Path2D.Double path = new Path2D.Double();
+        sample(curve, tMin, tMax, xMin, yMax, pixel, width, height, PathSink.of(path));
+        return path;
+    }
+
+
+    /**
+     * Samples the curve as above and hands the polyline to out segment by segment, instead of
+     * collecting it in a path.
+     */
+    public static void sample(Curve curve, double tMin, double tMax, double xMin, double yMax, double pixel, int width, int height, PathSink out) {
+        double[] ts = new double[INITIAL_SEGMENTS + 1];
+        for (int i = 0; i <= INITIAL_SEGMENTS; i++) {
+            ts[i] = tMin + (tMax - tMin) * i / INITIAL_SEGMENTS;
+        }
+        double[][] points = toScreen(curve.trace(ts), xMin, yMax, pixel);
+        List < Segment > segments = new ArrayList < > ();
+        for (int i = 0; i < INITIAL_SEGMENTS; i++) {
+            segments.add(new Segment(ts[i], points[0][i], points[1][i], ts[i + 1], points[0][i + 1], points[1][i + 1]));
+        }
+
+
+        boolean[] open = new boolean[segments.size()];
+        Arrays.fill(open, true);
+        for (int depth = 0; depth < MAX_DEPTH && !Thread.currentThread().isInterrupted(); depth++) {
+            // evaluate the midpoints of every open segment at once
+            int count = 0;
+            for (int i = 0; i < segments.size(); i++) {
+                if (open[i] && visible(segments.get(i), width, height)) count++;
+                else open[i] = false;
+            }
+            if (count == 0) {
+                break;
+            }
+            double[] mids = new double[count];
+            int m = 0;
+            for (int i = 0; i < segments.size(); i++) {
+                if (open[i]) mids[m++] = (segments.get(i).t0 + segments.get(i).t1) / 2;
+            }
+            double[][] midPoints = toScreen(curve.trace(mids), xMin, yMax, pixel);
+
+
+            List < Segment > next = new ArrayList < > (segments.size() + count);
+            boolean[] nextOpen = new boolean[segments.size() + count];
+            m = 0;
+            for (int i = 0; i < segments.size(); i++) {
+                Segment s = segments.get(i);
+                if (!open[i]) {
+                    next.add(s);
+                    continue;
+                }
+                double mx = midPoints[0][m], my = midPoints[1][m], mt = mids[m];
+                m++;
+                boolean split = needsSplit(s, mx, my);
+                next.add(new Segment(s.t0, s.x0, s.y0, mt, mx, my));
+                nextOpen[next.size() - 1] = split;
+                next.add(new Segment(mt, mx, my, s.t1, s.x1, s.y1));
+                nextOpen[next.size() - 1] = split;
+            }
+            segments = next;
+            open = nextOpen;
+        }
+
+
+        boolean drawing = false;
+        for (Segment s: segments) {
+            if (!finite(s.x0, s.y0) || !finite(s.x1, s.y1) || Math.hypot(s.x1 - s.x0, s.y1 - s.y0) > 4 * MAX_CHORD) {
+                drawing = false; // undefined or discontinuous here
+                continue;
+            }
+            if (!drawing) {
+                out.moveTo(s.x0, s.y0);
+                drawing = true;
+            }
+            out.lineTo(s.x1, s.y1);
+        }
+    }
+
+
+    // Distance of the midpoint from the chord, plus a cap on chord length so sparse features are not missed.
+    private static boolean needsSplit(Segment s, double mx, double my) {
+        if (!finite(s.x0, s.y0) || !finite(s.x1, s.y1) || !finite(mx, my)) {
+            // localize where the curve becomes undefined, as long as something is defined here
+            return finite(s.x0, s.y0) || finite(s.x1, s.y1) || finite(mx, my);
+        }
+        double dx = s.x1 - s.x0, dy = s.y1 - s.y0;
+        double chord = Math.hypot(dx, dy);
+        if (chord > MAX_CHORD) {
+            return true;
+        }
+        double deviation = chord == 0 ? Math.hypot(mx - s.x0, my - s.y0) : Math.abs(dx * (my - s.y0) - dy * (mx - s.x0)) / chord;
+        return deviation > FLATNESS;
+    }
+
+
+    // Segments whose ends are both off the same side of the window are not worth refining.
+    private static boolean visible(Segment s, int width, int height) {
+        if (!finite(s.x0, s.y0) || !finite(s.x1, s.y1)) {
+            return true;
+        }
+        double margin = MAX_CHORD;
+        return !(s.x0 < -margin && s.x1 < -margin) && !(s.x0 > width + margin && s.x1 > width + margin) &&
+            !(s.y0 < -margin && s.y1 < -margin) && !(s.y0 > height + margin && s.y1 > height + margin);
+    }
+
+
+    private static boolean finite(double x, double y) {
+        return Double.isFinite(x) && Double.isFinite(y);
+    }
+
+
+    private static double[][] toScreen(double[][] points, double xMin, double yMax, double pixel) {
+        double[] sx = new double[points[0].length];
+        double[] sy = new double[sx.length];
+        for (int i = 0; i < sx.length; i++) {
+            sx[i] = (points[0][i] - xMin) / pixel;
+            sy[i] = (yMax - points[1][i]) / pixel;
+        }
+        return new double[][] {
+            sx,
+            sy
+        };
+    }
+}
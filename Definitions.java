@@ -0,0 +1,208 @@
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+
+/**
+ * The names an expression may use besides x, y, t and the built-in functions: user definitions such
+ * as g(t)=t^2+1 or a=2, and f0, f1, ... for the plotted functions.
+ * Every definition is compiled once into a kernel that callers import, and remembers every name it
+ * was built from, so changing one definition recompiles only what depends on it.
+ * Instances are immutable and can be handed to background compilation as a snapshot.
+ */
+public final class Definitions {
+    private static final Pattern DEFINITION = Pattern.compile("([A-Za-z][A-Za-z0-9]*)(?:\\(([A-Za-z][A-Za-z0-9]*)\\))?=(.*)");
+    private static final Pattern PLOTTED = Pattern.compile("f(\\d{1,9})");
+    private static final Set < String > RESERVED = Set.of("r"); // r= is a polar curve
+    private static final String[] BINDING_VARIABLES = {
+        "x",
+        "y",
+        "t"
+    };
+
+
+    public static final Definitions NONE = new Definitions(new LinkedHashMap < > (), List.of());
+
+
+    /**
+     * One definition: a function of one parameter, or a let-binding when the parameter is null.
+     * A binding may use x, y and t, which take the values of the expression that uses it.
+     */
+    public static class Definition {
+        public final String name;
+        public final String parameter;
+        public final String text; // the input line, as typed
+        final FusedKernel program;
+
+
+        private Definition(String name, String parameter, String text, FusedKernel program) {
+            this.name = name;
+            this.parameter = parameter;
+            this.text = text;
+            this.program = program;
+        }
+
+
+        public boolean isFunction() {
+            return parameter != null;
+        }
+
+
+        // Returns the names this definition was built from, directly or not
+        public Set < String > getReferences() {
+            return program.references();
+        }
+    }
+
+
+    private final Map < String, Definition > named; // in the order they were first defined
+    private final List < TIUnNspired.Function > plotted;
+
+
+    private Definitions(Map < String, Definition > named, List < TIUnNspired.Function > plotted) {
+        this.named = named;
+        this.plotted = plotted;
+    }
+
+
+    /**
+     * @return whether the input line defines a name rather than plotting something, i.e. it has the
+     * form name(parameter)=body or name=body and the name is not x, y, r, t, e, p, a built-in
+     * function or a plotted function.
+     */
+    public static boolean isDefinition(String text) {
+        Matcher matcher = DEFINITION.matcher(text.replaceAll("\\s", ""));
+        return matcher.matches() && definable(matcher.group(1));
+    }
+
+
+    /**
+     * @return the name a definition line defines.
+     * @throws IllegalArgumentException if the line is not a definition.
+     */
+    public static String nameOf(String text) {
+        return match(text).group(1);
+    }
+
+
+    private static Matcher match(String text) {
+        Matcher matcher = DEFINITION.matcher(text.replaceAll("\\s", ""));
+        if (!matcher.matches() || !definable(matcher.group(1))) {
+            throw new IllegalArgumentException("Not a definition: " + text);
+        }
+        return matcher;
+    }
+
+
+    private static boolean definable(String name) {
+        return eval.isName(name) && !RESERVED.contains(name) && !PLOTTED.matcher(name).matches();
+    }
+
+
+    /**
+     * Compiles a definition line against these definitions, without adding it.
+     *
+     * @throws IllegalArgumentException if the line is not a definition or its body is invalid.
+     */
+    public Definition parse(String text) {
+        Matcher matcher = match(text);
+        String name = matcher.group(1);
+        String parameter = matcher.group(2);
+        if (parameter != null && !(eval.isName(parameter) || eval.VARIABLES.contains(parameter))) {
+            throw new IllegalArgumentException("Invalid parameter: " + parameter);
+        }
+        List < String > body = eval.toPostfix(eval.tokenize(matcher.group(3)), null, true);
+        // definitions only see other definitions; plotted functions are referenced from the plot
+        Definitions scope = new Definitions(named, List.of());
+        FusedKernel program = parameter == null ? FusedKernel.compilePrograms(List.of(body), scope, BINDING_VARIABLES) :
+            FusedKernel.compilePrograms(List.of(body), scope, parameter);
+        if (program.references().contains(name)) {
+            throw new IllegalArgumentException(name + " cannot refer to itself");
+        }
+        return new Definition(name, parameter, text, program);
+    }
+
+
+    /**
+     * Adds or replaces a definition and recompiles the definitions that depend on it.
+     *
+     * @return the new definitions
+     * @throws IllegalArgumentException if the line is invalid or a dependent no longer compiles.
+     */
+    public Definitions define(String text) {
+        Definition definition = parse(text);
+        Map < String, Definition > result = new LinkedHashMap < > (named);
+        result.put(definition.name, definition);
+
+
+        // recompile dependents once everything they use is up to date
+        List < Definition > pending = new ArrayList < > ();
+        for (Definition other: named.values()) {
+            if (other.getReferences().contains(definition.name)) pending.add(other);
+        }
+        while (!pending.isEmpty()) {
+            Definition next = null;
+            for (Definition candidate: pending) {
+                if (pending.stream().noneMatch(other -> candidate.getReferences().contains(other.name))) {
+                    next = candidate;
+                    break;
+                }
+            }
+            pending.remove(next);
+            try {
+                result.put(next.name, new Definitions(result, List.of()).parse(next.text));
+            } catch (IllegalArgumentException ex) {
+                throw new IllegalArgumentException(next.name + " depends on " + definition.name + ": " + ex.getMessage());
+            }
+        }
+        return new Definitions(result, plotted);
+    }
+
+
+    /**
+     * @return these definitions with f0, f1, ... naming the given plotted functions.
+     */
+    public Definitions withPlotted(List < TIUnNspired.Function > functions) {
+        return new Definitions(named, List.copyOf(functions));
+    }
+
+
+    /**
+     * @return the definition or plotted function with the given name.
+     * @throws IllegalArgumentException if there is none.
+     */
+    public Definition lookup(String name) {
+        Definition definition = named.get(name);
+        if (definition != null) {
+            return definition;
+        }
+        Matcher matcher = PLOTTED.matcher(name);
+        if (matcher.matches() && Integer.parseInt(matcher.group(1)) < plotted.size()) {
+            TIUnNspired.Function function = plotted.get(Integer.parseInt(matcher.group(1)));
+            if (!function.isExplicit()) {
+                throw new IllegalArgumentException(name + " is not a function of x");
+            }
+            return new Definition(name, "x", function.getExpression(), function.getProgram());
+        }
+        throw new IllegalArgumentException("Unknown name: " + name);
+    }
+
+
+    /**
+     * @return whether lookup would find the name.
+     */
+    public boolean defines(String name) {
+        Matcher matcher = PLOTTED.matcher(name);
+        return named.containsKey(name) || (matcher.matches() && Integer.parseInt(matcher.group(1)) < plotted.size());
+    }
+
+
+    public Collection < Definition > all() {
+        return named.values();
+    }
+}
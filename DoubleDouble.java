@@ -0,0 +1,469 @@
+/**
+ * Immutable double-double number: an unevaluated sum hi + lo of two doubles with |lo| <= ulp(hi) / 2,
+ * giving about 106 bits (~32 decimal digits) of precision. Used for deep zoom, where plain doubles
+ * band and produce bogus roots. The algorithms follow the QD library (Hida, Li and Bailey); everything
+ * is done with double arithmetic and Math.fma, so it is orders of magnitude faster than BigDecimal.
+ */
+public final class DoubleDouble implements Comparable < DoubleDouble > {
+    public static final DoubleDouble ZERO = new DoubleDouble(0.0, 0.0);
+    public static final DoubleDouble ONE = new DoubleDouble(1.0, 0.0);
+    public static final DoubleDouble TEN = new DoubleDouble(10.0, 0.0);
+    public static final DoubleDouble PI = new DoubleDouble(3.141592653589793116e+00, 1.224646799147353207e-16);
+    public static final DoubleDouble TWO_PI = new DoubleDouble(6.283185307179586232e+00, 2.449293598294706414e-16);
+    public static final DoubleDouble HALF_PI = new DoubleDouble(1.570796326794896558e+00, 6.123233995736766036e-17);
+    public static final DoubleDouble E = new DoubleDouble(2.718281828459045091e+00, 1.445646891729250158e-16);
+    public static final DoubleDouble LN2 = new DoubleDouble(6.931471805599452862e-01, 2.319046813846299558e-17);
+    public static final DoubleDouble NaN = new DoubleDouble(Double.NaN, Double.NaN);
+    public static final double EPS = 4.93038065763132e-32; // 2^-104
+
+
+    public final double hi;
+    public final double lo;
+
+
+    private DoubleDouble(double hi, double lo) {
+        this.hi = hi;
+        this.lo = lo;
+    }
+
+
+    public static DoubleDouble valueOf(double value) {
+        return new DoubleDouble(value, 0.0);
+    }
+
+
+    /**
+     * Parses a decimal literal (as produced by eval's tokenizer) to full double-double precision,
+     * so constants such as 0.1 are not first rounded to a double.
+     */
+    public static DoubleDouble parse(String text) {
+        DoubleDouble value = ZERO;
+        boolean negative = false;
+        int decimals = -1;
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            if (c == '-' && i == 0) {
+                negative = true;
+            } else if (c == '+' && i == 0) {
+                continue;
+            } else if (c == '.' && decimals < 0) {
+                decimals = 0;
+            } else if (Character.isDigit(c)) {
+                value = value.multiply(10.0).add(c - '0');
+                if (decimals >= 0) decimals++;
+            } else {
+                return valueOf(Double.parseDouble(text)); // exponents and other forms
+            }
+        }
+        if (decimals > 0) {
+            value = value.divide(TEN.pow(decimals));
+        }
+        return negative ? value.negate() : value;
+    }
+
+
+    public double doubleValue() {
+        return hi + lo;
+    }
+
+
+    public boolean isNaN() {
+        return Double.isNaN(hi);
+    }
+
+
+    public boolean isInfinite() {
+        return Double.isInfinite(hi);
+    }
+
+
+    public int signum() {
+        return hi > 0 ? 1 : hi < 0 ? -1 : lo > 0 ? 1 : lo < 0 ? -1 : 0;
+    }
+
+
+    public boolean isZero() {
+        return hi == 0.0;
+    }
+
+
+    @Override
+    public int compareTo(DoubleDouble other) {
+        int c = Double.compare(hi, other.hi);
+        return c != 0 ? c : Double.compare(lo, other.lo);
+    }
+
+
+    @Override
+    public boolean equals(Object other) {
+        return other instanceof DoubleDouble && compareTo((DoubleDouble) other) == 0;
+    }
+
+
+    @Override
+    public int hashCode() {
+        return Double.hashCode(hi) * 31 + Double.hashCode(lo);
+    }
+
+
+    // ---- error-free transformations ----
+
+
+    private static DoubleDouble quickTwoSum(double a, double b) {
+        double s = a + b;
+        if (Double.isInfinite(s) || Double.isNaN(s)) return new DoubleDouble(s, 0.0);
+        return new DoubleDouble(s, b - (s - a));
+    }
+
+
+    private static DoubleDouble twoSum(double a, double b) {
+        double s = a + b;
+        if (Double.isInfinite(s) || Double.isNaN(s)) return new DoubleDouble(s, 0.0);
+        double bb = s - a;
+        return new DoubleDouble(s, (a - (s - bb)) + (b - bb));
+    }
+
+
+    // ---- arithmetic ----
+
+
+    public DoubleDouble negate() {
+        return new DoubleDouble(-hi, -lo);
+    }
+
+
+    public DoubleDouble abs() {
+        return signum() < 0 ? negate() : this;
+    }
+
+
+    public DoubleDouble add(DoubleDouble b) {
+        DoubleDouble s = twoSum(hi, b.hi);
+        DoubleDouble t = twoSum(lo, b.lo);
+        DoubleDouble u = quickTwoSum(s.hi, s.lo + t.hi);
+        return quickTwoSum(u.hi, u.lo + t.lo);
+    }
+
+
+    public DoubleDouble add(double b) {
+        DoubleDouble s = twoSum(hi, b);
+        return quickTwoSum(s.hi, s.lo + lo);
+    }
+
+
+    public DoubleDouble subtract(DoubleDouble b) {
+        return add(b.negate());
+    }
+
+
+    public DoubleDouble multiply(DoubleDouble b) {
+        double p = hi * b.hi;
+        if (Double.isInfinite(p) || Double.isNaN(p)) return new DoubleDouble(p, 0.0);
+        double e = Math.fma(hi, b.hi, -p);
+        return quickTwoSum(p, e + (hi * b.lo + lo * b.hi));
+    }
+
+
+    public DoubleDouble multiply(double b) {
+        double p = hi * b;
+        if (Double.isInfinite(p) || Double.isNaN(p)) return new DoubleDouble(p, 0.0);
+        double e = Math.fma(hi, b, -p);
+        return quickTwoSum(p, e + lo * b);
+    }
+
+
+    public DoubleDouble square() {
+        return multiply(this);
+    }
+
+
+    public DoubleDouble divide(DoubleDouble b) {
+        double q1 = hi / b.hi;
+        if (Double.isInfinite(q1) || Double.isNaN(q1) || b.isInfinite()) return valueOf(q1);
+        DoubleDouble r = subtract(b.multiply(q1));
+        double q2 = r.hi / b.hi;
+        r = r.subtract(b.multiply(q2));
+        double q3 = r.hi / b.hi;
+        return quickTwoSum(q1, q2).add(q3);
+    }
+
+
+    public DoubleDouble divide(double b) {
+        return divide(valueOf(b));
+    }
+
+
+    public DoubleDouble reciprocal() {
+        return ONE.divide(this);
+    }
+
+
+    /**
+     * @return this rounded to the nearest integer.
+     */
+    public DoubleDouble rint() {
+        double h = Math.rint(hi);
+        if (h == hi) {
+            return quickTwoSum(h, Math.rint(lo));
+        }
+        if (Math.abs(h - hi) == 0.5 && lo != 0) {
+            h = lo > 0 ? Math.ceil(hi) : Math.floor(hi); // a tie in hi is decided by the sign of lo
+        }
+        return valueOf(h);
+    }
+
+
+    public boolean isInteger() {
+        return rint().equals(this);
+    }
+
+
+    // ---- elementary functions ----
+
+
+    public DoubleDouble sqrt() {
+        if (hi == 0) return ZERO;
+        if (hi < 0) return NaN;
+        if (isInfinite()) return this;
+        double x = 1.0 / Math.sqrt(hi);
+        double ax = hi * x;
+        DoubleDouble axdd = valueOf(ax);
+        return axdd.add(subtract(axdd.square()).hi * (x * 0.5));
+    }
+
+
+    public DoubleDouble cbrt() {
+        if (hi == 0 || isNaN() || isInfinite()) return this;
+        DoubleDouble y = valueOf(Math.cbrt(hi));
+        // one Newton step doubles the 53 correct bits of Math.cbrt
+        DoubleDouble y2 = y.square();
+        return y.subtract(y2.multiply(y).subtract(this).divide(y2.multiply(3.0)));
+    }
+
+
+    public DoubleDouble exp() {
+        if (hi > 709.8) return valueOf(Double.POSITIVE_INFINITY);
+        if (hi < -745.2) return ZERO;
+        if (isNaN()) return NaN;
+        if (hi == 0) return ONE;
+
+
+        // exp(a) = 2^k * exp(r) with |r| <= ln2 / 2, and exp(r) = (1 + expm1(r / 512))^512
+        double k = Math.rint(hi / LN2.hi);
+        DoubleDouble r = subtract(LN2.multiply(k)).multiply(1.0 / 512);
+        DoubleDouble term = r;
+        DoubleDouble sum = r;
+        for (int n = 2; n < 30 && Math.abs(term.hi) > EPS * Math.abs(sum.hi); n++) {
+            term = term.multiply(r).divide(n);
+            sum = sum.add(term);
+        }
+        for (int i = 0; i < 9; i++) {
+            sum = sum.multiply(2.0).add(sum.square());
+        }
+        sum = sum.add(1.0);
+        return new DoubleDouble(Math.scalb(sum.hi, (int) k), Math.scalb(sum.lo, (int) k));
+    }
+
+
+    public DoubleDouble log() {
+        if (isNaN() || hi < 0) return NaN;
+        if (hi == 0) return valueOf(Double.NEGATIVE_INFINITY);
+        if (isInfinite()) return this;
+        if (hi == 1.0 && lo == 0.0) return ZERO;
+        // one Newton step on exp(x) = a from the double approximation
+        DoubleDouble x = valueOf(Math.log(hi));
+        return x.add(multiply(x.negate().exp())).subtract(ONE);
+    }
+
+
+    /**
+     * @return this raised to an integer power by repeated squaring.
+     */
+    public DoubleDouble pow(int n) {
+        if (n == 0) return ONE;
+        DoubleDouble base = this;
+        DoubleDouble result = ONE;
+        long m = Math.abs((long) n);
+        while (m > 0) {
+            if ((m & 1) == 1) result = result.multiply(base);
+            m >>= 1;
+            if (m > 0) base = base.square();
+        }
+        return n < 0 ? result.reciprocal() : result;
+    }
+
+
+    /**
+     * Follows Math.pow: integer exponents are exact powers (and allow a negative base),
+     * other exponents need a positive base.
+     */
+    public DoubleDouble pow(DoubleDouble b) {
+        if (isNaN() || b.isNaN() || isInfinite() || b.isInfinite()) {
+            return valueOf(Math.pow(doubleValue(), b.doubleValue()));
+        }
+        if (b.isInteger() && Math.abs(b.hi) < 1 << 30) {
+            if (hi == 0 && b.hi < 0) return valueOf(Math.pow(hi, b.hi));
+            return pow((int) b.hi);
+        }
+        if (hi == 0) return valueOf(Math.pow(0.0, b.hi));
+        if (hi < 0) return NaN;
+        return b.multiply(log()).exp();
+    }
+
+
+    public DoubleDouble sin() {
+        return sinCos(true);
+    }
+
+
+    public DoubleDouble cos() {
+        return sinCos(false);
+    }
+
+
+    public DoubleDouble tan() {
+        return sin().divide(cos());
+    }
+
+
+    private DoubleDouble sinCos(boolean sine) {
+        if (isNaN() || isInfinite()) return NaN;
+        if (hi == 0) return sine ? ZERO : ONE;
+        // reduce to t in [-pi/4, pi/4] plus a quadrant j
+        DoubleDouble r = subtract(TWO_PI.multiply(divide(TWO_PI).rint()));
+        DoubleDouble j = r.divide(HALF_PI).rint();
+        DoubleDouble t = r.subtract(HALF_PI.multiply(j));
+        int quadrant = (((int) j.hi) % 4 + 4) % 4;
+        DoubleDouble s = sinTaylor(t);
+        DoubleDouble c = cosTaylor(t);
+        if (!sine) quadrant = (quadrant + 1) % 4; // cos(t) = sin(t + pi/2)
+        return switch (quadrant) {
+            case 0 -> s;
+            case 1 -> c;
+            case 2 -> s.negate();
+            default -> c.negate();
+        };
+    }
+
+
+    private static DoubleDouble sinTaylor(DoubleDouble t) {
+        DoubleDouble t2 = t.square().negate();
+        DoubleDouble term = t;
+        DoubleDouble sum = t;
+        for (int n = 2; n < 60 && Math.abs(term.hi) > EPS * Math.abs(sum.hi); n += 2) {
+            term = term.multiply(t2).divide(n * (n + 1.0));
+            sum = sum.add(term);
+        }
+        return sum;
+    }
+
+
+    private static DoubleDouble cosTaylor(DoubleDouble t) {
+        DoubleDouble t2 = t.square().negate();
+        DoubleDouble term = ONE;
+        DoubleDouble sum = ONE;
+        for (int n = 1; n < 60 && Math.abs(term.hi) > EPS; n += 2) {
+            term = term.multiply(t2).divide(n * (n + 1.0));
+            sum = sum.add(term);
+        }
+        return sum;
+    }
+
+
+    /**
+     * @return the angle of the point (x, y), refined from Math.atan2 with one Newton step.
+     */
+    public static DoubleDouble atan2(DoubleDouble y, DoubleDouble x) {
+        if (x.isNaN() || y.isNaN()) return NaN;
+        if (x.isZero() && y.isZero()) return ZERO;
+        if (x.isInfinite() || y.isInfinite()) return valueOf(Math.atan2(y.hi, x.hi));
+        DoubleDouble r = x.square().add(y.square()).sqrt();
+        DoubleDouble xx = x.divide(r);
+        DoubleDouble yy = y.divide(r);
+        DoubleDouble z = valueOf(Math.atan2(y.hi, x.hi));
+        DoubleDouble sinZ = z.sin();
+        DoubleDouble cosZ = z.cos();
+        if (Math.abs(xx.hi) > Math.abs(yy.hi)) {
+            return z.add(yy.subtract(sinZ).divide(cosZ));
+        }
+        return z.subtract(xx.subtract(cosZ).divide(sinZ));
+    }
+
+
+    public DoubleDouble atan() {
+        return atan2(this, ONE);
+    }
+
+
+    public DoubleDouble asin() {
+        if (Math.abs(hi) > 1) return NaN;
+        return atan2(this, ONE.subtract(square()).sqrt());
+    }
+
+
+    public DoubleDouble acos() {
+        if (Math.abs(hi) > 1) return NaN;
+        return atan2(ONE.subtract(square()).sqrt(), this);
+    }
+
+
+    // ---- formatting ----
+
+
+    /**
+     * Formats this number with the given number of significant digits, in plain notation
+     * for moderate exponents and scientific notation otherwise.
+     */
+    public String toString(int significantDigits) {
+        if (isNaN() || isInfinite()) return Double.toString(hi);
+        if (hi == 0) return "0";
+        int digits = Math.max(1, Math.min(significantDigits, 32));
+        DoubleDouble v = abs();
+        int exponent = (int) Math.floor(Math.log10(v.hi));
+        v = v.divide(TEN.pow(exponent)).add(0.5 * Math.pow(10, 1 - digits)); // round the last digit
+        if (v.hi >= 10) {
+            v = v.divide(10.0);
+            exponent++;
+        } else if (v.hi < 1) {
+            v = v.multiply(10.0);
+            exponent--;
+        }
+
+
+        char[] mantissa = new char[digits];
+        for (int i = 0; i < digits; i++) {
+            int d = Math.max(0, Math.min(9, (int) Math.floor(v.hi)));
+            mantissa[i] = (char)('0' + d);
+            v = v.subtract(valueOf(d)).multiply(10.0);
+        }
+
+
+        StringBuilder out = new StringBuilder(signum() < 0 ? "-" : "");
+        if (exponent >= -4 && exponent < digits) {
+            if (exponent < 0) {
+                out.append("0.");
+                for (int i = -1; i > exponent; i--) out.append('0');
+                out.append(mantissa);
+            } else {
+                out.append(mantissa, 0, exponent + 1);
+                if (exponent + 1 < digits) out.append('.').append(mantissa, exponent + 1, digits - exponent - 1);
+            }
+            // drop trailing zeros of the fraction
+            if (out.indexOf(".") >= 0) {
+                while (out.charAt(out.length() - 1) == '0') out.setLength(out.length() - 1);
+                if (out.charAt(out.length() - 1) == '.') out.setLength(out.length() - 1);
+            }
+        } else {
+            out.append(mantissa[0]);
+            if (digits > 1) out.append('.').append(mantissa, 1, digits - 1);
+            out.append('E').append(exponent);
+        }
+        return out.toString();
+    }
+
+
+    @Override
+    public String toString() {
+        return toString(32);
+    }
+}
@@ -0,0 +1,591 @@
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.Stack;
+import java.util.TreeSet;
+import java.util.stream.IntStream;
+
+
+/**
+ * Compiles every plotted function of a scene into one shared expression DAG.
+ * Identical subexpressions (e.g. the sin(x) in both sin(x)+1 and 2*sin(x)) become a
+ * single node, so one pass over an x-grid produces the y-values of all functions at once
+ * and the per-frame cost tracks the number of distinct subexpressions, not the function count.
+ * Calls to definitions and to other plotted functions are expanded by importing their compiled
+ * kernels, so a definition is parsed once and everything it computes is shared the same way.
+ */
+public class FusedKernel {
+    private static final int CHUNK = 256; // points per parallel task in large batches
+    static final int CONST = 0;
+    static final int VAR = 1; // value holds the variable's index
+    static final int NEG = 2;
+    static final int ADD = 3;
+    static final int MUL = 4;
+    static final int DIV = 5;
+    static final int POW = 6;
+    static final int SIN = 7;
+    static final int COS = 8;
+    static final int TAN = 9;
+    static final int LN = 10;
+    static final int SQRT = 11;
+    static final int CBRT = 12;
+    static final int ABS = 13;
+    static final int ATAN = 14;
+    static final int ASIN = 15;
+    static final int ACOS = 16;
+
+
+    // Flattened DAG in topological order: node i only reads nodes < i.
+    private final int[] op;
+    private final int[] lhs;
+    private final int[] rhs;
+    private final double[] value;
+    private final DoubleDouble[] exact; // constants to double-double precision for deep zoom
+    private final int[] roots; // root node of each function
+    private final int[] slotOf; // buffer slot assigned to each node
+    private final int slotCount;
+    private final List < String > variables;
+    private final Set < String > references; // every name expanded into the kernel, directly or not
+
+
+    private FusedKernel(Builder builder, int[] roots) {
+        int n = builder.op.size();
+        this.variables = builder.variables;
+        this.references = Set.copyOf(builder.references);
+        this.op = new int[n];
+        this.lhs = new int[n];
+        this.rhs = new int[n];
+        this.value = new double[n];
+        this.exact = new DoubleDouble[n];
+        for (int i = 0; i < n; i++) {
+            op[i] = builder.op.get(i);
+            lhs[i] = builder.lhs.get(i);
+            rhs[i] = builder.rhs.get(i);
+            value[i] = builder.value.get(i);
+            exact[i] = builder.exact.get(i);
+        }
+        this.roots = roots;
+
+
+        // Assign buffer slots by last use so intermediate arrays are recycled during a pass.
+        int[] lastUse = new int[n];
+        for (int i = 0; i < n; i++) {
+            lastUse[i] = i;
+            if (lhs[i] >= 0) lastUse[lhs[i]] = i;
+            if (rhs[i] >= 0) lastUse[rhs[i]] = i;
+        }
+        for (int root: roots) {
+            lastUse[root] = Integer.MAX_VALUE; // outputs stay live until the end
+        }
+        slotOf = new int[n];
+        Stack < Integer > free = new Stack < > ();
+        int slots = 0;
+        for (int i = 0; i < n; i++) {
+            slotOf[i] = free.isEmpty() ? slots++ : free.pop();
+            if (lhs[i] >= 0 && lastUse[lhs[i]] == i) free.push(slotOf[lhs[i]]);
+            if (rhs[i] >= 0 && rhs[i] != lhs[i] && lastUse[rhs[i]] == i) free.push(slotOf[rhs[i]]);
+        }
+        this.slotCount = slots;
+    }
+
+
+    /**
+     * Compiles all functions of a scene into one kernel.
+     *
+     * @param functions the plotted functions
+     * @return a kernel producing one y-array per function
+     * @throws IllegalArgumentException if an expression is malformed.
+     */
+    public static FusedKernel compile(List < TIUnNspired.Function > functions) {
+        Builder builder = new Builder(Definitions.NONE, "x");
+        int x = builder.node(VAR, -1, -1, 0, null);
+        int[] roots = new int[functions.size()];
+        for (int k = 0; k < functions.size(); k++) {
+            TIUnNspired.Function function = functions.get(k);
+            // relations and curves are not y = f(x); a NaN row keeps indices aligned and yields no roots
+            roots[k] = function.isExplicit() ? builder.inline(function.getProgram(), 0, x) : builder.constant(Double.NaN, DoubleDouble.NaN);
+        }
+        return new FusedKernel(builder, roots);
+    }
+
+
+    /**
+     * Compiles several postfix programs over the named variables into one kernel, e.g. the x(t) and
+     * y(t) components of a parametric curve, or F(x, y) of an implicit relation.
+     * Values for the variables are passed to evaluate in the order they are named here.
+     *
+     * @throws IllegalArgumentException if a program is malformed or uses another variable.
+     */
+    public static FusedKernel compilePrograms(List < List < String > > programs, String...variables) {
+        return compilePrograms(programs, Definitions.NONE, variables);
+    }
+
+
+    /**
+     * Compiles postfix programs that may call definitions and plotted functions of the given scope.
+     * The names expanded along the way are available from {@link #references()}.
+     *
+     * @throws IllegalArgumentException if a program is malformed, uses another variable or an
+     * unknown name.
+     */
+    public static FusedKernel compilePrograms(List < List < String > > programs, Definitions scope, String...variables) {
+        Builder builder = new Builder(scope, variables);
+        int[] roots = new int[programs.size()];
+        for (int k = 0; k < programs.size(); k++) {
+            roots[k] = builder.addPostfix(programs.get(k));
+        }
+        return new FusedKernel(builder, roots);
+    }
+
+
+    public int functionCount() {
+        return roots.length;
+    }
+
+
+    /**
+     * @return the names of the definitions and plotted functions (f0, f1, ...) this kernel was built
+     * from, including the ones they refer to in turn.
+     */
+    public Set < String > references() {
+        return references;
+    }
+
+
+    /**
+     * Evaluates the first function at a single point, without the buffers of a batch pass.
+     */
+    public double valueAt(double...variables) {
+        double[] v = new double[op.length];
+        for (int i = 0; i < op.length; i++) {
+            v[i] = switch (op[i]) {
+                case CONST -> value[i];
+                case VAR -> variables[(int) value[i]];
+                case ADD, MUL, DIV, POW -> applyBinary(op[i], v[lhs[i]], v[rhs[i]]);
+                default -> applyUnary(op[i], v[lhs[i]]);
+            };
+        }
+        return v[roots[0]];
+    }
+
+
+    /**
+     * Evaluates every function on the uniform grid x0, x0 + dx, ..., x0 + (n - 1) * dx.
+     *
+     * @return ys[k][i] = f_k(x0 + i * dx)
+     */
+    public double[][] evaluateGrid(double x0, double dx, int n) {
+        double[] xs = new double[n];
+        for (int i = 0; i < n; i++) {
+            xs[i] = x0 + i * dx;
+        }
+        return evaluate(xs);
+    }
+
+
+    /**
+     * Evaluates every function at each of the given points in a single pass over the DAG.
+     * Kernels over several variables take one array per variable, all of the same length.
+     * Large batches are split into chunks of points evaluated in parallel; the kernel is immutable,
+     * so any number of threads may evaluate it at once.
+     *
+     * @return ys[k][i] = f_k(xs[i])
+     */
+    public double[][] evaluate(double[]...variables) {
+        int n = variables[0].length;
+        if (n <= CHUNK) {
+            return evaluateChunk(variables);
+        }
+        double[][] ys = new double[roots.length][n];
+        IntStream.range(0, (n + CHUNK - 1) / CHUNK).parallel().forEach(c -> {
+            int from = c * CHUNK, to = Math.min(n, from + CHUNK);
+            double[][] chunk = new double[variables.length][];
+            for (int v = 0; v < variables.length; v++) {
+                chunk[v] = Arrays.copyOfRange(variables[v], from, to);
+            }
+            double[][] part = evaluateChunk(chunk);
+            for (int k = 0; k < roots.length; k++) {
+                System.arraycopy(part[k], 0, ys[k], from, to - from);
+            }
+        });
+        return ys;
+    }
+
+
+    private double[][] evaluateChunk(double[][] variables) {
+        int n = variables[0].length;
+        double[][] slots = new double[slotCount][];
+        for (int i = 0; i < op.length; i++) {
+            double[] out = slots[slotOf[i]];
+            if (out == null) {
+                out = slots[slotOf[i]] = new double[n];
+            }
+            double[] a = lhs[i] >= 0 ? slots[slotOf[lhs[i]]] : null;
+            double[] b = rhs[i] >= 0 ? slots[slotOf[rhs[i]]] : null;
+            apply(i, variables, a, b, out, n);
+        }
+
+
+        double[][] ys = new double[roots.length][];
+        for (int k = 0; k < roots.length; k++) {
+            // functions may share a root node, so each output gets its own copy
+            ys[k] = Arrays.copyOf(slots[slotOf[roots[k]]], n);
+        }
+        return ys;
+    }
+
+
+    /**
+     * Double-double counterpart of {@link #evaluate(double[][])}, used in deep-zoom mode where the grid
+     * spacing is far below the resolution of a double.
+     *
+     * @return ys[k][i] = f_k(xs[i])
+     */
+    public DoubleDouble[][] evaluate(DoubleDouble[]...variables) {
+        int n = variables[0].length;
+        if (n <= CHUNK) {
+            return evaluateChunk(variables);
+        }
+        DoubleDouble[][] ys = new DoubleDouble[roots.length][n];
+        IntStream.range(0, (n + CHUNK - 1) / CHUNK).parallel().forEach(c -> {
+            int from = c * CHUNK, to = Math.min(n, from + CHUNK);
+            DoubleDouble[][] chunk = new DoubleDouble[variables.length][];
+            for (int v = 0; v < variables.length; v++) {
+                chunk[v] = Arrays.copyOfRange(variables[v], from, to);
+            }
+            DoubleDouble[][] part = evaluateChunk(chunk);
+            for (int k = 0; k < roots.length; k++) {
+                System.arraycopy(part[k], 0, ys[k], from, to - from);
+            }
+        });
+        return ys;
+    }
+
+
+    private DoubleDouble[][] evaluateChunk(DoubleDouble[][] variables) {
+        int n = variables[0].length;
+        DoubleDouble[][] slots = new DoubleDouble[slotCount][];
+        for (int i = 0; i < op.length; i++) {
+            DoubleDouble[] out = slots[slotOf[i]];
+            if (out == null) {
+                out = slots[slotOf[i]] = new DoubleDouble[n];
+            }
+            DoubleDouble[] a = lhs[i] >= 0 ? slots[slotOf[lhs[i]]] : null;
+            DoubleDouble[] b = rhs[i] >= 0 ? slots[slotOf[rhs[i]]] : null;
+            for (int j = 0; j < n; j++) {
+                out[j] = switch (op[i]) {
+                    case CONST -> exact[i];
+                    case VAR -> variables[(int) value[i]][j];
+                    case ADD, MUL, DIV, POW -> applyBinary(op[i], a[j], b[j]);
+                    default -> applyUnary(op[i], a[j]);
+                };
+            }
+        }
+
+
+        DoubleDouble[][] ys = new DoubleDouble[roots.length][];
+        for (int k = 0; k < roots.length; k++) {
+            ys[k] = Arrays.copyOf(slots[slotOf[roots[k]]], n);
+        }
+        return ys;
+    }
+
+
+    private void apply(int node, double[][] variables, double[] a, double[] b, double[] out, int n) {
+        switch (op[node]) {
+            case CONST -> Arrays.fill(out, 0, n, value[node]);
+            case VAR -> System.arraycopy(variables[(int) value[node]], 0, out, 0, n);
+            case NEG -> {
+                for (int i = 0; i < n; i++) out[i] = -a[i];
+            }
+            case ADD -> {
+                for (int i = 0; i < n; i++) out[i] = a[i] + b[i];
+            }
+            case MUL -> {
+                for (int i = 0; i < n; i++) out[i] = a[i] * b[i];
+            }
+            case DIV -> {
+                for (int i = 0; i < n; i++) out[i] = a[i] / b[i];
+            }
+            case POW -> {
+                for (int i = 0; i < n; i++) out[i] = Math.pow(a[i], b[i]);
+            }
+            default -> {
+                for (int i = 0; i < n; i++) out[i] = applyUnary(op[node], a[i]);
+            }
+        }
+    }
+
+
+    static double applyUnary(int code, double v) {
+        return switch (code) {
+            case NEG -> -v;
+            case SIN -> Math.sin(v);
+            case COS -> Math.cos(v);
+            case TAN -> Math.tan(v);
+            case LN -> Math.log(v);
+            case SQRT -> Math.sqrt(v);
+            case CBRT -> Math.cbrt(v);
+            case ABS -> Math.abs(v);
+            case ATAN -> Math.atan(v);
+            case ASIN -> Math.asin(v);
+            case ACOS -> Math.acos(v);
+            default ->
+            throw new IllegalArgumentException("Unknown opcode: " + code);
+        };
+    }
+
+
+    static DoubleDouble applyUnary(int code, DoubleDouble v) {
+        return switch (code) {
+            case NEG -> v.negate();
+            case SIN -> v.sin();
+            case COS -> v.cos();
+            case TAN -> v.tan();
+            case LN -> v.log();
+            case SQRT -> v.sqrt();
+            case CBRT -> v.cbrt();
+            case ABS -> v.abs();
+            case ATAN -> v.atan();
+            case ASIN -> v.asin();
+            case ACOS -> v.acos();
+            default ->
+            throw new IllegalArgumentException("Unknown opcode: " + code);
+        };
+    }
+
+
+    static double applyBinary(int code, double a, double b) {
+        return switch (code) {
+            case ADD -> a + b;
+            case MUL -> a * b;
+            case DIV -> a / b;
+            case POW -> Math.pow(a, b);
+            default ->
+            throw new IllegalArgumentException("Unknown opcode: " + code);
+        };
+    }
+
+
+    static DoubleDouble applyBinary(int code, DoubleDouble a, DoubleDouble b) {
+        return switch (code) {
+            case ADD -> a.add(b);
+            case MUL -> a.multiply(b);
+            case DIV -> a.divide(b);
+            case POW -> a.pow(b);
+            default ->
+            throw new IllegalArgumentException("Unknown opcode: " + code);
+        };
+    }
+
+
+    static int functionCode(String token) {
+        return switch (token) {
+            case "sin" -> SIN;
+            case "cos" -> COS;
+            case "tan" -> TAN;
+            case "ln" -> LN;
+            case "sqrt" -> SQRT;
+            case "cbrt" -> CBRT;
+            case "abs" -> ABS;
+            case "arctan" -> ATAN;
+            case "arcsin" -> ASIN;
+            case "arccos" -> ACOS;
+            default -> -1;
+        };
+    }
+
+
+    static int operatorCode(String token) {
+        return switch (token) {
+            case "+" -> ADD;
+            case "*" -> MUL;
+            case "/" -> DIV;
+            case "^" -> POW;
+            default -> -1;
+        };
+    }
+
+
+    /**
+     * Hash-consing DAG builder. Every node is looked up by (op, operands, value) before it is
+     * created, so structurally equal subexpressions across functions collapse into one node.
+     */
+    static class Builder {
+        final ArrayList < Integer > op = new ArrayList < > ();
+        final ArrayList < Integer > lhs = new ArrayList < > ();
+        final ArrayList < Integer > rhs = new ArrayList < > ();
+        final ArrayList < Double > value = new ArrayList < > ();
+        final ArrayList < DoubleDouble > exact = new ArrayList < > ();
+        private final Map < String, Integer > index = new HashMap < > ();
+        private final List < String > variables;
+        private final Definitions scope;
+        private final Set < String > references = new TreeSet < > ();
+
+
+        Builder(Definitions scope, String...variables) {
+            this.scope = scope;
+            this.variables = List.of(variables);
+        }
+
+
+        // Mirrors eval.evaluatePostfix, but builds nodes instead of computing numbers.
+        int addPostfix(List < String > postfix) {
+            Stack < Integer > stack = new Stack < > ();
+            for (String token: postfix) {
+                if (token.equals("e")) {
+                    stack.push(constant(Math.E, DoubleDouble.E));
+                } else if (token.equals("p")) {
+                    stack.push(constant(Math.PI, DoubleDouble.PI));
+                } else if (eval.isNumber(token)) {
+                    stack.push(constant(Double.parseDouble(token), DoubleDouble.parse(token)));
+                } else if (variables.contains(token)) {
+                    stack.push(node(VAR, -1, -1, variables.indexOf(token), null));
+                } else if (eval.VARIABLES.contains(token)) {
+                    throw new IllegalArgumentException("Unknown variable: " + token);
+                } else if (token.endsWith("(")) {
+                    if (stack.isEmpty()) {
+                        throw new IllegalArgumentException("Missing argument for " + token + ")");
+                    }
+                    stack.push(call(token.substring(0, token.length() - 1), stack.pop()));
+                } else if (eval.isName(token)) {
+                    stack.push(binding(token));
+                } else if (functionCode(token) >= 0) {
+                    if (stack.isEmpty()) {
+                        throw new IllegalArgumentException("Missing operand for function " + token);
+                    }
+                    stack.push(unary(functionCode(token), stack.pop()));
+                } else if (token.equals("-")) {
+                    // eval treats '-' as unary minus
+                    if (stack.isEmpty()) {
+                        throw new IllegalArgumentException("Missing operands for operator " + token);
+                    }
+                    stack.push(unary(NEG, stack.pop()));
+                } else if (operatorCode(token) >= 0) {
+                    if (stack.size() < 2) {
+                        throw new IllegalArgumentException("Missing operands for operator " + token);
+                    }
+                    int b = stack.pop();
+                    int a = stack.pop();
+                    stack.push(binary(operatorCode(token), a, b));
+                } else {
+                    throw new IllegalArgumentException("Unknown token: " + token);
+                }
+            }
+            if (stack.size() != 1) {
+                throw new IllegalArgumentException("Invalid expression");
+            }
+            return stack.pop();
+        }
+
+
+        // name(argument): the definition's kernel with its parameter bound to the argument
+        private int call(String name, int argument) {
+            Definitions.Definition definition = scope.lookup(name);
+            if (!definition.isFunction()) {
+                throw new IllegalArgumentException(name + " is not a function");
+            }
+            references.add(name);
+            return inline(definition.program, 0, argument);
+        }
+
+
+        // A let-binding: its kernel over the variables it shares with this builder.
+        private int binding(String name) {
+            Definitions.Definition definition = scope.lookup(name);
+            if (definition.isFunction()) {
+                throw new IllegalArgumentException(name + " needs an argument");
+            }
+            int[] arguments = new int[definition.program.variables.size()];
+            for (int v = 0; v < arguments.length; v++) {
+                int mine = variables.indexOf(definition.program.variables.get(v));
+                arguments[v] = mine < 0 ? -1 : node(VAR, -1, -1, mine, null);
+            }
+            references.add(name);
+            return inline(definition.program, 0, arguments);
+        }
+
+
+        /**
+         * Copies one function of a compiled kernel into this DAG, substituting the given nodes for its
+         * variables (-1 where this builder has no counterpart). The copy is hash-consed like any other
+         * node, so a kernel imported twice with the same arguments, or by several functions, is shared.
+         *
+         * @return the node of the imported function
+         */
+        int inline(FusedKernel kernel, int function, int...arguments) {
+            references.addAll(kernel.references);
+            int root = kernel.roots[function];
+            boolean[] live = new boolean[root + 1]; // skip nodes this function does not read
+            live[root] = true;
+            for (int i = root; i >= 0; i--) {
+                if (!live[i]) continue;
+                if (kernel.lhs[i] >= 0) live[kernel.lhs[i]] = true;
+                if (kernel.rhs[i] >= 0) live[kernel.rhs[i]] = true;
+            }
+            int[] map = new int[root + 1];
+            for (int i = 0; i <= root; i++) {
+                if (!live[i]) continue;
+                map[i] = switch (kernel.op[i]) {
+                    case CONST -> constant(kernel.value[i], kernel.exact[i]);
+                    case VAR -> {
+                        int argument = arguments[(int) kernel.value[i]];
+                        if (argument < 0) {
+                            throw new IllegalArgumentException("Unknown variable: " + kernel.variables.get((int) kernel.value[i]));
+                        }
+                        yield argument;
+                    }
+                    case ADD, MUL, DIV, POW -> binary(kernel.op[i], map[kernel.lhs[i]], map[kernel.rhs[i]]);
+                    default -> unary(kernel.op[i], map[kernel.lhs[i]]);
+                };
+            }
+            return map[root];
+        }
+
+
+        int constant(double v, DoubleDouble dd) {
+            return node(CONST, -1, -1, v, dd);
+        }
+
+
+        int unary(int code, int a) {
+            if (op.get(a) == CONST) {
+                return constant(applyUnary(code, value.get(a)), applyUnary(code, exact.get(a)));
+            }
+            return node(code, a, -1, 0, null);
+        }
+
+
+        int binary(int code, int a, int b) {
+            if (op.get(a) == CONST && op.get(b) == CONST) {
+                return constant(applyBinary(code, value.get(a), value.get(b)), applyBinary(code, exact.get(a), exact.get(b)));
+            }
+            // + and * are exactly commutative in IEEE arithmetic, so x*2 and 2*x share a node
+            if ((code == ADD || code == MUL) && a > b) {
+                int t = a;
+                a = b;
+                b = t;
+            }
+            return node(code, a, b, 0, null);
+        }
+
+
+        int node(int code, int a, int b, double v, DoubleDouble dd) {
+            String key = code + ":" + a + ":" + b + ":" + Double.doubleToLongBits(v) + ":" + (dd == null ? "" : dd.hi + "/" + dd.lo);
+            Integer existing = index.get(key);
+            if (existing != null) {
+                return existing;
+            }
+            op.add(code);
+            lhs.add(a);
+            rhs.add(b);
+            value.add(v);
+            exact.add(dd);
+            index.put(key, op.size() - 1);
+            return op.size() - 1;
+        }
+    }
+}
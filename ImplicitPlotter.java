@@ -0,0 +1,289 @@
+import java.awt.geom.Path2D;
+import java.awt.geom.PathIterator;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveTask;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+
+/**
+ * Plots implicit relations F(x, y) = 0 with marching squares.
+ * The screen is covered by a coarse grid whose tiles are evaluated in parallel on a ForkJoinPool;
+ * only cells the contour may pass through are refined, quadtree style, down to one pixel,
+ * so the cost follows the length of the curve rather than the area of the window.
+ */
+public class ImplicitPlotter {
+    private static final int COARSE_CELL = 8; // pixels per side of a coarse cell, a power of two
+    private static final int TILE_CELLS = 16; // coarse cells per side handled by one task
+
+
+    /**
+     * Traces F(x, y) = 0 over the visible window.
+     *
+     * @param relation kernel over the variables (x, y) whose first function is F
+     * @param xMin     graph x of the left pixel column
+     * @param yMax     graph y of the top pixel row
+     * @param pixel    graph units per pixel
+     * @param width    window width in pixels
+     * @param height   window height in pixels
+     * @return the contour as line segments in screen coordinates, or nothing if the calling thread is
+     * interrupted, which stops the tiles at their next refinement level
+     */
+    public static Path2D.Double plot(FusedKernel relation, double xMin, double yMax, double pixel, int width, int height) {
+        int columns = (width + COARSE_CELL - 1) / COARSE_CELL;
+        int rows = (height + COARSE_CELL - 1) / COARSE_CELL;
+        // the tiles run on the pool's threads, so an interrupt of the caller reaches them through a flag
+        AtomicBoolean cancelled = new AtomicBoolean();
+        ForkJoinTask < Path2D.Double > plot = ForkJoinPool.commonPool().submit(new Tile(relation, cancelled, xMin, yMax, pixel, 0, 0, columns, rows));
+        try {
+            return plot.get();
+        } catch (InterruptedException ex) {
+            cancelled.set(true);
+            Thread.currentThread().interrupt();
+            return new Path2D.Double();
+        } catch (ExecutionException ex) {
+            if (ex.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) ex.getCause();
+            }
+            throw new IllegalStateException(ex.getCause());
+        }
+    }
+
+
+    /**
+     * Traces F(x, y) = 0 as above, one band of rows at a time, handing each band's segments to out
+     * before the next band is traced, so only one band of the contour is held however tall the window.
+     * Bands are whole tiles, so the contour is the same as traced in one piece.
+     */
+    public static void plot(FusedKernel relation, double xMin, double yMax, double pixel, int width, int height, PathSink out) {
+        int band = TILE_CELLS * COARSE_CELL;
+        double[] point = new double[6];
+        for (int y0 = 0; y0 < height && !Thread.currentThread().isInterrupted(); y0 += band) {
+            PathIterator segments = plot(relation, xMin, yMax - y0 * pixel, pixel, width, Math.min(band, height - y0)).getPathIterator(null);
+            for (; !segments.isDone(); segments.next()) {
+                if (segments.currentSegment(point) == PathIterator.SEG_MOVETO) {
+                    out.moveTo(point[0], point[1] + y0);
+                } else {
+                    out.lineTo(point[0], point[1] + y0);
+                }
+            }
+        }
+    }
+
+
+    // A cell of the quadtree: top-left pixel, side length and the values of F at its corners.
+    private static class Cell {
+        final double px, py, size;
+        final double topLeft, topRight, bottomLeft, bottomRight;
+
+
+        Cell(double px, double py, double size, double topLeft, double topRight, double bottomLeft, double bottomRight) {
+            this.px = px;
+            this.py = py;
+            this.size = size;
+            this.topLeft = topLeft;
+            this.topRight = topRight;
+            this.bottomLeft = bottomLeft;
+            this.bottomRight = bottomRight;
+        }
+
+
+        // The contour crosses the cell, or F gets closer to zero than it varies across the cell,
+        // so a small loop or a tangency may hide inside.
+        boolean mayContainContour() {
+            double min = Math.min(Math.min(topLeft, topRight), Math.min(bottomLeft, bottomRight));
+            double max = Math.max(Math.max(topLeft, topRight), Math.max(bottomLeft, bottomRight));
+            if (Double.isNaN(min) || Double.isNaN(max)) {
+                return false; // outside the relation's domain
+            }
+            if (min <= 0 && max >= 0) {
+                return true;
+            }
+            return Math.min(Math.abs(min), Math.abs(max)) < max - min;
+        }
+    }
+
+
+    private static class Tile extends RecursiveTask < Path2D.Double > {
+        private static final long serialVersionUID = 1L;
+        private final FusedKernel relation;
+        private final AtomicBoolean cancelled; // shared by all tiles of one plot
+        private final double xMin, yMax, pixel;
+        private final int column, row, columns, rows; // in coarse cells
+
+
+        Tile(FusedKernel relation, AtomicBoolean cancelled, double xMin, double yMax, double pixel, int column, int row, int columns, int rows) {
+            this.relation = relation;
+            this.cancelled = cancelled;
+            this.xMin = xMin;
+            this.yMax = yMax;
+            this.pixel = pixel;
+            this.column = column;
+            this.row = row;
+            this.columns = columns;
+            this.rows = rows;
+        }
+
+
+        @Override
+        protected Path2D.Double compute() {
+            if (cancelled.get()) {
+                return new Path2D.Double(); // the plot is no longer wanted
+            }
+            if (columns > TILE_CELLS || rows > TILE_CELLS) {
+                // split along the longer side and trace both halves in parallel
+                Tile first, second;
+                if (columns >= rows) {
+                    first = new Tile(relation, cancelled, xMin, yMax, pixel, column, row, columns / 2, rows);
+                    second = new Tile(relation, cancelled, xMin, yMax, pixel, column + columns / 2, row, columns - columns / 2, rows);
+                } else {
+                    first = new Tile(relation, cancelled, xMin, yMax, pixel, column, row, columns, rows / 2);
+                    second = new Tile(relation, cancelled, xMin, yMax, pixel, column, row + rows / 2, columns, rows - rows / 2);
+                }
+                second.fork();
+                Path2D.Double path = first.compute();
+                path.append(second.join(), false);
+                return path;
+            }
+            return trace();
+        }
+
+
+        private Path2D.Double trace() {
+            // evaluate the tile's coarse corner grid in one batch
+            int stride = columns + 1;
+            double[] xs = new double[stride * (rows + 1)];
+            double[] ys = new double[xs.length];
+            for (int j = 0; j <= rows; j++) {
+                for (int i = 0; i <= columns; i++) {
+                    xs[j * stride + i] = xMin + (column + i) * COARSE_CELL * pixel;
+                    ys[j * stride + i] = yMax - (row + j) * COARSE_CELL * pixel;
+                }
+            }
+            double[] f = relation.evaluate(xs, ys)[0];
+
+
+            List < Cell > cells = new ArrayList < > ();
+            for (int j = 0; j < rows; j++) {
+                for (int i = 0; i < columns; i++) {
+                    int k = j * stride + i;
+                    cells.add(new Cell((column + i) * COARSE_CELL, (row + j) * COARSE_CELL, COARSE_CELL, f[k], f[k + 1], f[k + stride], f[k + stride + 1]));
+                }
+            }
+
+
+            Path2D.Double path = new Path2D.Double();
+            while (!cells.isEmpty() && !cancelled.get()) {
+                List < Cell > refine = new ArrayList < > ();
+                for (Cell cell: cells) {
+                    if (!cell.mayContainContour()) continue;
+                    if (cell.size <= 1) {
+                        march(cell, path);
+                    } else {
+                        refine.add(cell);
+                    }
+                }
+                cells = subdivide(refine);
+            }
+            return path;
+        }
+
+
+        // Splits every cell into four, evaluating the five new corner points of all cells in one batch.
+        private List < Cell > subdivide(List < Cell > parents) {
+            List < Cell > children = new ArrayList < > ();
+            if (parents.isEmpty()) {
+                return children;
+            }
+            double[] xs = new double[parents.size() * 5];
+            double[] ys = new double[xs.length];
+            for (int c = 0; c < parents.size(); c++) {
+                Cell cell = parents.get(c);
+                double h = cell.size / 2;
+                double[][] points = {
+                    {cell.px + h, cell.py}, // top
+                    {cell.px, cell.py + h}, // left
+                    {cell.px + h, cell.py + h}, // center
+                    {cell.px + cell.size, cell.py + h}, // right
+                    {cell.px + h, cell.py + cell.size} // bottom
+                };
+                for (int p = 0; p < 5; p++) {
+                    xs[c * 5 + p] = xMin + points[p][0] * pixel;
+                    ys[c * 5 + p] = yMax - points[p][1] * pixel;
+                }
+            }
+            double[] f = relation.evaluate(xs, ys)[0];
+
+
+            for (int c = 0; c < parents.size(); c++) {
+                Cell cell = parents.get(c);
+                double h = cell.size / 2;
+                double top = f[c * 5], left = f[c * 5 + 1], center = f[c * 5 + 2], right = f[c * 5 + 3], bottom = f[c * 5 + 4];
+                children.add(new Cell(cell.px, cell.py, h, cell.topLeft, top, left, center));
+                children.add(new Cell(cell.px + h, cell.py, h, top, cell.topRight, center, right));
+                children.add(new Cell(cell.px, cell.py + h, h, left, center, cell.bottomLeft, bottom));
+                children.add(new Cell(cell.px + h, cell.py + h, h, center, right, bottom, cell.bottomRight));
+            }
+            return children;
+        }
+    }
+
+
+    // Emits the marching-squares segments of a leaf cell, with crossings placed by linear interpolation.
+    private static void march(Cell cell, Path2D.Double path) {
+        double s = cell.size;
+        double[] top = crossing(cell.topLeft, cell.topRight, cell.px, cell.py, cell.px + s, cell.py);
+        double[] right = crossing(cell.topRight, cell.bottomRight, cell.px + s, cell.py, cell.px + s, cell.py + s);
+        double[] bottom = crossing(cell.bottomLeft, cell.bottomRight, cell.px, cell.py + s, cell.px + s, cell.py + s);
+        double[] left = crossing(cell.topLeft, cell.bottomLeft, cell.px, cell.py, cell.px, cell.py + s);
+
+
+        if (top != null && right != null && bottom != null && left != null) {
+            // saddle: the sign at the center decides which corners are connected
+            double center = (cell.topLeft + cell.topRight + cell.bottomLeft + cell.bottomRight) / 4;
+            if ((center >= 0) == (cell.topLeft >= 0)) {
+                segment(path, top, right);
+                segment(path, bottom, left);
+            } else {
+                segment(path, left, top);
+                segment(path, right, bottom);
+            }
+            return;
+        }
+        double[] from = null;
+        for (double[] point: new double[][] {
+                top,
+                right,
+                bottom,
+                left
+            }) {
+            if (point == null) continue;
+            if (from == null) {
+                from = point;
+            } else {
+                segment(path, from, point);
+                break;
+            }
+        }
+    }
+
+
+    private static double[] crossing(double a, double b, double x1, double y1, double x2, double y2) {
+        if ((a >= 0) == (b >= 0)) {
+            return null;
+        }
+        double t = a / (a - b);
+        return new double[] {
+            x1 + t * (x2 - x1), y1 + t * (y2 - y1)
+        };
+    }
+
+
+    private static void segment(Path2D.Double path, double[] from, double[] to) {
+        path.moveTo(from[0], from[1]);
+        path.lineTo(to[0], to[1]);
+    }
+}
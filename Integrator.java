@@ -0,0 +1,262 @@
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.stream.IntStream;
+
+
+/**
+ * Adaptive Gauss-Kronrod (G7K15) quadrature.
+ * Panels wait in a priority queue ordered by their error estimate; the worst ones are bisected in
+ * batches, and every batch of 15-point rules is evaluated in parallel chunks on the common pool.
+ * Smooth integrands converge to the requested tolerance in a handful of panels, far fewer evaluations
+ * than a uniform Riemann sum of comparable accuracy.
+ */
+public class Integrator {
+    // Kronrod nodes on [0, 1]; the odd indices (and 0 at the center) are the Gauss nodes.
+    private static final double[] XGK = {
+        0.991455371120812639206854697526329,
+        0.949107912342758524526189684047851,
+        0.864864423359769072789712788640926,
+        0.741531185599394439863864773280788,
+        0.586087235467691130294144845693013,
+        0.405845151377397166906606412076961,
+        0.207784955007898467600689403773245,
+        0.000000000000000000000000000000000
+    };
+    private static final double[] WGK = {
+        0.022935322010529224963732008058970,
+        0.063092092629978553290700663189204,
+        0.104790010322250183839876322541518,
+        0.140653259715525918745189590510238,
+        0.169004726639267902826583426598550,
+        0.190350578064785409913256402421014,
+        0.204432940075298892414161999234649,
+        0.209482141084727828012999174891714
+    };
+    private static final double[] WG = {
+        0.129484966168869693270611432679082,
+        0.279705391489276667901467771423780,
+        0.381830050505118944950369775488975,
+        0.417959183673469387755102040816327
+    };
+    private static final int POINTS = 15; // evaluations per panel
+    private static final int BATCH = 32; // panels bisected per round
+    private static final int CHUNK = 64; // panels per parallel task
+
+
+    private final double relativeAccuracy;
+    private final double absoluteAccuracy;
+    private final int maxEvaluations;
+
+
+    public Integrator(double relativeAccuracy, double absoluteAccuracy, int maxEvaluations) {
+        this.relativeAccuracy = relativeAccuracy;
+        this.absoluteAccuracy = absoluteAccuracy;
+        this.maxEvaluations = maxEvaluations;
+    }
+
+
+    /**
+     * An integrand that evaluates a whole batch of points at once, e.g. through a fused kernel.
+     */
+    public interface Integrand {
+        double[] evaluate(double[] xs);
+    }
+
+
+    /**
+     * The outcome of an integration.
+     */
+    public static class Result {
+        public final double value; // the integral over the whole range
+        public final double error; // estimated absolute error
+        public final double[] pieces; // the integral over each interval between consecutive breakpoints
+        public final int evaluations;
+        public final boolean converged;
+
+
+        Result(double value, double error, double[] pieces, int evaluations, boolean converged) {
+            this.value = value;
+            this.error = error;
+            this.pieces = pieces;
+            this.evaluations = evaluations;
+            this.converged = converged;
+        }
+
+
+        /**
+         * @return the sum of the absolute values of the pieces; the enclosed area when the
+         * breakpoints are the sign changes of the integrand.
+         */
+        public double area() {
+            double area = 0;
+            for (double piece: pieces) {
+                area += Math.abs(piece);
+            }
+            return area;
+        }
+    }
+
+
+    // One panel with its Kronrod estimate and |Kronrod - Gauss| as error.
+    private static class Panel implements Comparable < Panel > {
+        final double a, b;
+        final int piece;
+        double value, error;
+
+
+        Panel(double a, double b, int piece) {
+            this.a = a;
+            this.b = b;
+            this.piece = piece;
+        }
+
+
+        @Override
+        public int compareTo(Panel other) {
+            return Double.compare(other.error, error); // largest error first
+        }
+    }
+
+
+    /**
+     * Integrates over [breakpoints[0], breakpoints[n - 1]], never placing a panel across a breakpoint.
+     * Splitting at the points where the integrand changes sign (e.g. the intersections of two
+     * functions) keeps every panel smooth and makes the per-piece results signed areas.
+     *
+     * @param func        the integrand
+     * @param breakpoints the sorted integration limits, including both ends
+     * @return the integral with its error estimate and per-piece values
+     */
+    public Result integrate(Integrand func, double[] breakpoints) {
+        int pieces = Math.max(0, breakpoints.length - 1);
+        List < Panel > initial = new ArrayList < > ();
+        for (int i = 0; i < pieces; i++) {
+            if (breakpoints[i + 1] > breakpoints[i]) {
+                initial.add(new Panel(breakpoints[i], breakpoints[i + 1], i));
+            }
+        }
+        evaluate(func, initial);
+        int evaluations = initial.size() * POINTS;
+
+
+        PriorityQueue < Panel > queue = new PriorityQueue < > (initial);
+        List < Panel > settled = new ArrayList < > (); // panels too narrow to bisect
+        double value = 0, error = 0;
+        for (Panel panel: initial) {
+            value += panel.value;
+            error += panel.error;
+        }
+
+
+        while (!queue.isEmpty() && !(error <= Math.max(absoluteAccuracy, relativeAccuracy * Math.abs(value))) &&
+            evaluations + 2 * POINTS <= maxEvaluations && Double.isFinite(value)) {
+            // bisect the worst panels and evaluate all their children in one parallel batch
+            List < Panel > children = new ArrayList < > ();
+            while (!queue.isEmpty() && children.size() < 2 * BATCH && evaluations + (children.size() + 2) * POINTS <= maxEvaluations) {
+                Panel worst = queue.poll();
+                double mid = 0.5 * (worst.a + worst.b);
+                if (mid <= worst.a || mid >= worst.b) {
+                    settled.add(worst); // cannot be split any further; its estimate is final
+                    continue;
+                }
+                value -= worst.value;
+                error -= worst.error;
+                children.add(new Panel(worst.a, mid, worst.piece));
+                children.add(new Panel(mid, worst.b, worst.piece));
+            }
+            if (children.isEmpty()) {
+                break;
+            }
+            evaluate(func, children);
+            evaluations += children.size() * POINTS;
+            for (Panel child: children) {
+                value += child.value;
+                error += child.error;
+                queue.add(child);
+            }
+        }
+
+
+        // sum per piece from the final panels, which is more accurate than the running totals
+        double[] pieceValues = new double[pieces];
+        double total = 0, totalError = 0;
+        settled.addAll(queue);
+        for (Panel panel: settled) {
+            pieceValues[panel.piece] += panel.value;
+            total += panel.value;
+            totalError += panel.error;
+        }
+        boolean converged = Double.isFinite(total) && totalError <= Math.max(absoluteAccuracy, relativeAccuracy * Math.abs(total));
+        return new Result(total, totalError, pieceValues, evaluations, converged);
+    }
+
+
+    // Applies the 15-point rule to every panel; large batches are split into chunks evaluated in parallel.
+    private static void evaluate(Integrand func, List < Panel > panels) {
+        int chunks = (panels.size() + CHUNK - 1) / CHUNK;
+        if (chunks <= 1) {
+            evaluateChunk(func, panels);
+        } else {
+            IntStream.range(0, chunks).parallel().forEach(c ->
+                evaluateChunk(func, panels.subList(c * CHUNK, Math.min(panels.size(), (c + 1) * CHUNK))));
+        }
+    }
+
+
+    private static void evaluateChunk(Integrand func, List < Panel > panels) {
+        double[] xs = new double[panels.size() * POINTS];
+        for (int p = 0; p < panels.size(); p++) {
+            Panel panel = panels.get(p);
+            double center = 0.5 * (panel.a + panel.b);
+            double half = 0.5 * (panel.b - panel.a);
+            int base = p * POINTS;
+            for (int j = 0; j < 7; j++) {
+                xs[base + 2 * j] = center - half * XGK[j];
+                xs[base + 2 * j + 1] = center + half * XGK[j];
+            }
+            xs[base + 14] = center;
+        }
+        double[] fs = func.evaluate(xs);
+
+
+        for (int p = 0; p < panels.size(); p++) {
+            Panel panel = panels.get(p);
+            double half = 0.5 * (panel.b - panel.a);
+            int base = p * POINTS;
+            double fc = fs[base + 14];
+            double kronrod = WGK[7] * fc;
+            double gauss = WG[3] * fc;
+            for (int j = 0; j < 7; j++) {
+                double pair = fs[base + 2 * j] + fs[base + 2 * j + 1];
+                kronrod += WGK[j] * pair;
+                if (j % 2 == 1) {
+                    gauss += WG[j / 2] * pair;
+                }
+            }
+            panel.value = kronrod * half;
+            panel.error = Math.abs((kronrod - gauss) * half);
+            if (!Double.isFinite(panel.value)) {
+                panel.error = Double.POSITIVE_INFINITY;
+            }
+        }
+    }
+
+
+    /**
+     * Builds the sorted breakpoint array [min, roots inside (min, max)..., max].
+     */
+    public static double[] breakpoints(double min, double max, List < Double > roots) {
+        double[] points = new double[roots.size() + 2];
+        int n = 0;
+        points[n++] = min;
+        for (double root: roots) {
+            if (root > min && root < max) points[n++] = root;
+        }
+        points[n++] = max;
+        double[] result = Arrays.copyOf(points, n);
+        Arrays.sort(result);
+        return result;
+    }
+}
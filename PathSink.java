@@ -0,0 +1,32 @@
+import java.awt.geom.Path2D;
+
+
+/**
+ * Receives a curve piece by piece, in screen coordinates, as it is traced, so a caller can draw or
+ * write it out without the whole path being held first.
+ */
+public interface PathSink {
+    void moveTo(double x, double y);
+
+
+    void lineTo(double x, double y);
+
+
+    /**
+     * @return a sink that appends to the given path.
+     */
+    static PathSink of(Path2D.Double path) {
+        return new PathSink() {
+            @Override
+            public void moveTo(double x, double y) {
+                path.moveTo(x, y);
+            }
+
+
+            @Override
+            public void lineTo(double x, double y) {
+                path.lineTo(x, y);
+            }
+        };
+    }
+}
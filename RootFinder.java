@@ -2,9 +2,16 @@ import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
 import java.util.function.DoubleUnaryOperator;
+import java.util.function.UnaryOperator;
 
 
 public class RootFinder {
+    public static final int TANGENT_BUDGET = 50; // evaluations findRoot and findAllRoots spend on one tangency search
+    private static final double GOLDEN = 0.3819660112501051; // (3 - sqrt(5)) / 2
+    private static final double SQRT_EPSILON = 1.4901161193847656e-8; // a minimum is only located to about sqrt(ulp)
+    private static final double TANGENT_RATIO = 1e-9; // |f| at a tangency, relative to |f| at the ends of the search
+
+
     private final double relativeAccuracy;
     private final double absoluteAccuracy;
     private final double functionValueAccuracy;
@@ -33,14 +40,15 @@ public class RootFinder {
 
     /**
      * Finds a single root in the interval [min, max] with the specified initial guess.
-     * It requires that the interval actually brackets a sign change.
+     * Without a sign change at the ends or the guess, only a tangency (an even-multiplicity root) or a
+     * pair of close roots is found, by {@link #findTangentRoot} within TANGENT_BUDGET evaluations.
      *
      * @param func    the function
      * @param min     lower bound
      * @param initial initial guess (must be in [min, max])
      * @param max     upper bound
      * @return a root in the interval
-     * @throws IllegalArgumentException if no sign change is found.
+     * @throws IllegalArgumentException if no root is found.
      */
     public double findRoot(DoubleUnaryOperator func, double min, double initial, double max) {
         if (min > max) {
@@ -53,6 +61,9 @@ public class RootFinder {
         final double yInitial = func.applyAsDouble(initial);
         final double yMin = func.applyAsDouble(min);
         final double yMax = func.applyAsDouble(max);
+        if (yInitial == 0) return initial;
+        if (yMin == 0) return min;
+        if (yMax == 0) return max;
         // Standard check: require a true sign change.
         if (Double.compare(yInitial * yMin, 0.0) < 0) {
             return brent(func, min, initial, yMin, yInitial);
@@ -60,32 +71,182 @@ public class RootFinder {
         if (Double.compare(yInitial * yMax, 0.0) < 0) {
             return brent(func, initial, max, yInitial, yMax);
         }
-        // Fallback: if the function does not change sign, require a sign change in the derivative.
-        double dMin = approximateDerivative(func, min);
-        double dMax = approximateDerivative(func, max);
-        if (Double.compare(dMin * dMax, 0.0) < 0) {
-            // Use our method to find a zero of the derivative.
-            // We use the same numeric method on the approximate derivative function.
-            double candidate = findRoot(x - > approximateDerivative(func, x), min, max);
-            // If the function is sufficiently close to zero at the candidate, accept it.
-            if (Math.abs(func.applyAsDouble(candidate)) <= functionValueAccuracy) {
-                return candidate;
-            }
+        // Fallback: the function may touch zero without changing sign.
+        Tangency tangency = findTangentRoot(func, min, max, yMin, yMax, initial, TANGENT_BUDGET);
+        if (tangency.crossing) {
+            return brent(func, min, tangency.x, yMin, tangency.value);
+        }
+        if (tangency.root) {
+            return tangency.x;
         }
         throw new IllegalArgumentException("Interval does not bracket a root.");
     }
 
 
     /**
-     * Approximates the derivative of the given function at x using central differences.
+     * The outcome of a search for a tangency: the point where |f| was smallest, and whether it is a
+     * root.
+     */
+    public static class Tangency {
+        public final double x; // where |f| is smallest, or where f was found to change sign
+        public final double value; // f(x)
+        public final boolean root; // f touches zero at x: a double root or a tangency
+        public final boolean crossing; // f(x) has the opposite sign of the ends, so a root lies on each side of x
+        public final int evaluations;
+
+
+        Tangency(double x, double value, boolean root, boolean crossing, int evaluations) {
+            this.x = x;
+            this.value = value;
+            this.root = root;
+            this.crossing = crossing;
+            this.evaluations = evaluations;
+        }
+    }
+
+
+    /**
+     * Looks for a root that a sign test cannot see: f has the same sign at both ends of [lo, hi] but
+     * comes close to zero inside. Brent's minimization (golden section with parabolic steps) of |f|
+     * locates the smallest |f|, stopping as soon as f changes sign or the budget is spent. The minimum
+     * is a root if |f| there is at most functionValueAccuracy, or TANGENT_RATIO times |f| at the
+     * ends, whichever is larger; a minimum cannot be located finer than about sqrt(ulp), so an
+     * absolute test alone would reject most tangencies. Only finite end values count, and with none
+     * the minimum is no root unless f is exactly zero there.
      *
-     * @param func the function
-     * @param x    the point at which to approximate the derivative
-     * @return an approximation of f'(x)
+     * @param fLo    f(lo)
+     * @param fHi    f(hi), of the same sign as fLo
+     * @param guess  where the minimum is expected, e.g. the sample where |f| dips, or NaN for none
+     * @param budget the most evaluations of f to spend
+     * @return the point found; never throws for lack of a root
      */
-    private double approximateDerivative(DoubleUnaryOperator func, double x) {
-        double delta = 1e-6;
-        return (func.applyAsDouble(x + delta) - func.applyAsDouble(x - delta)) / (2 * delta);
+    public Tangency findTangentRoot(DoubleUnaryOperator func, double lo, double hi, double fLo, double fHi, double guess, int budget) {
+        double sign = Math.signum(fLo != 0 ? fLo : fHi);
+        double a = lo, b = hi;
+        double x = guess > lo && guess < hi ? guess : lo + GOLDEN * (hi - lo);
+        double fx = func.applyAsDouble(x);
+        int evaluations = 1;
+        if (fx * sign < 0 || fx == 0) {
+            return new Tangency(x, fx, fx == 0, fx != 0, evaluations);
+        }
+        double gx = magnitude(fx);
+        double w = x, gw = gx, v = x, gv = gx;
+        double d = 0, e = 0;
+
+
+        while (evaluations < budget) {
+            double m = 0.5 * (a + b);
+            double tol1 = SQRT_EPSILON * Math.abs(x) + absoluteAccuracy;
+            double tol2 = 2 * tol1;
+            if (Math.abs(x - m) <= tol2 - 0.5 * (b - a)) {
+                break; // the minimum is located as finely as it can be
+            }
+            boolean golden = true;
+            if (Math.abs(e) > tol1) {
+                // parabola through x, w and v
+                double r = (x - w) * (gx - gv);
+                double q = (x - v) * (gx - gw);
+                double p = (x - v) * q - (x - w) * r;
+                q = 2 * (q - r);
+                if (q > 0) {
+                    p = -p;
+                } else {
+                    q = -q;
+                }
+                double previous = e;
+                e = d;
+                if (Math.abs(p) < Math.abs(0.5 * q * previous) && p > q * (a - x) && p < q * (b - x)) {
+                    d = p / q;
+                    double u = x + d;
+                    if (u - a < tol2 || b - u < tol2) {
+                        d = x < m ? tol1 : -tol1;
+                    }
+                    golden = false;
+                }
+            }
+            if (golden) {
+                e = (x < m ? b : a) - x;
+                d = GOLDEN * e;
+            }
+            double u = Math.abs(d) >= tol1 ? x + d : x + Math.copySign(tol1, d);
+            double fu = func.applyAsDouble(u);
+            evaluations++;
+            if (fu * sign < 0 || fu == 0) {
+                return new Tangency(u, fu, fu == 0, fu != 0, evaluations);
+            }
+            double gu = magnitude(fu);
+            if (gu <= gx) {
+                if (u < x) b = x;
+                else a = x;
+                v = w;
+                gv = gw;
+                w = x;
+                gw = gx;
+                x = u;
+                gx = gu;
+                fx = fu;
+            } else {
+                if (u < x) a = u;
+                else b = u;
+                if (gu <= gw || w == x) {
+                    v = w;
+                    gv = gw;
+                    w = u;
+                    gw = gu;
+                } else if (gu <= gv || v == x || v == w) {
+                    v = u;
+                    gv = gu;
+                }
+            }
+        }
+        if (!Double.isFinite(fLo) && !Double.isFinite(fHi)) {
+            return new Tangency(x, fx, false, false, evaluations); // nothing to measure the minimum against
+        }
+        double threshold = Math.max(functionValueAccuracy, TANGENT_RATIO * Math.max(finiteMagnitude(fLo), finiteMagnitude(fHi)));
+        return new Tangency(x, fx, gx <= threshold, false, evaluations);
+    }
+
+
+    // |f|, with undefined values treated as far from zero
+    private static double magnitude(double value) {
+        return Double.isNaN(value) ? Double.POSITIVE_INFINITY : Math.abs(value);
+    }
+
+
+    // |f| where it is finite, else 0, so a pole or an undefined end cannot raise the tangency threshold
+    private static double finiteMagnitude(double value) {
+        return Double.isFinite(value) ? Math.abs(value) : 0;
+    }
+
+
+    /**
+     * @return whether the middle of three consecutive finite samples of one sign is closer to zero
+     * than both neighbours, by less than |f| varies across them, so the function may touch zero nearby.
+     */
+    static boolean isDip(double left, double middle, double right) {
+        if (!(left * middle > 0 && middle * right > 0)) {
+            return false; // a sign change or an undefined value; handled elsewhere
+        }
+        if (!Double.isFinite(left) || !Double.isFinite(middle) || !Double.isFinite(right)) {
+            return false; // next to a pole, where |f| falling away says nothing about a root
+        }
+        double l = Math.abs(left), m = Math.abs(middle), r = Math.abs(right);
+        return m < l && m <= r && m < (l - m) + (r - m);
+    }
+
+
+    /**
+     * Adds the roots near a dip of the samples at x between lo and hi: the tangency, or the two roots
+     * of a pair too close together for the samples to show a sign change.
+     */
+    void addTangentRoots(DoubleUnaryOperator func, double lo, double x, double hi, double fLo, double fHi, int budget, List < Double > roots) {
+        Tangency tangency = findTangentRoot(func, lo, hi, fLo, fHi, x, budget);
+        if (tangency.crossing) {
+            roots.add(brent(func, lo, tangency.x, fLo, tangency.value));
+            roots.add(brent(func, tangency.x, hi, tangency.value, fHi));
+        } else if (tangency.root) {
+            roots.add(tangency.x);
+        }
     }
 
 
@@ -176,6 +337,11 @@ public class RootFinder {
     }
 
 
+    private static boolean oppositeSigns(double a, double b) {
+        return (a < 0 && b > 0) || (a > 0 && b < 0);
+    }
+
+
     private static boolean equalsZero(double value) {
         return Math.abs(value) <= Double.MIN_VALUE;
     }
@@ -183,8 +349,11 @@ public class RootFinder {
 
     /**
      * Finds all roots of the given function in the interval [min, max].
-     * The interval is divided into subintervals for testing.
-     * A post-processing step then filters out multiple roots that are too close together.
+     * The interval is divided into subintervals for testing: a sign change across either half of one is
+     * polished by Brent's method, and a dip of the samples at its ends and midpoint is handed to the tangency
+     * search. Every subinterval costs two evaluations plus at most TANGENT_BUDGET, whether or not it
+     * holds a root.
+     * A post-processing step then filters out roots found twice.
      *
      * @param func         the function to solve.
      * @param min          the lower bound of the interval.
@@ -196,6 +365,8 @@ public class RootFinder {
         List < Double > roots = new ArrayList < > ();
         double step = (max - min) / subintervals; // The width of each subinterval.
         double currentMin = min;
+        double yMin = func.applyAsDouble(min);
+        double previousMiddle = Double.NaN, yPreviousMiddle = Double.NaN; // the sample before currentMin
 
 
         while (currentMin < max) {
@@ -203,22 +374,200 @@ public class RootFinder {
             if (currentMax > max) {
                 currentMax = max; // Ensure the last interval is valid.
             }
+            double middle = 0.5 * (currentMin + currentMax);
+            double yMiddle = func.applyAsDouble(middle);
+            double yMax = func.applyAsDouble(currentMax);
+
+
+            if (yMin == 0) {
+                roots.add(currentMin);
+            } else if (oppositeSigns(yMin, yMiddle)) {
+                // bracket each half, so a pair of roots on either side of the middle is found
+                roots.add(brent(func, currentMin, middle, yMin, yMiddle));
+                if (oppositeSigns(yMiddle, yMax)) {
+                    roots.add(brent(func, middle, currentMax, yMiddle, yMax));
+                }
+            } else if (yMiddle == 0) {
+                roots.add(middle);
+            } else if (oppositeSigns(yMiddle, yMax)) {
+                roots.add(brent(func, middle, currentMax, yMiddle, yMax));
+            } else if (isDip(yMin, yMiddle, yMax)) {
+                addTangentRoots(func, currentMin, middle, currentMax, yMin, yMax, TANGENT_BUDGET, roots);
+            } else if (isDip(yPreviousMiddle, yMin, yMiddle)) {
+                addTangentRoots(func, previousMiddle, currentMin, middle, yPreviousMiddle, yMiddle, TANGENT_BUDGET, roots);
+            }
+
+
+            currentMin = currentMax; // Move to the next subinterval.
+            yMin = yMax;
+            previousMiddle = middle;
+            yPreviousMiddle = yMiddle;
+        }
+        if (yMin == 0) {
+            roots.add(max);
+        }
+
+
+        // Filter out roots found twice; distinct roots a fraction of a subinterval apart are kept.
+        return filterCloseRoots(roots, step * 1e-6);
+    }
+
+
+    /**
+     * Polishes the root in [lo, hi], where the function changes sign, starting from a guess such as
+     * the root found there for a coarser view. A bracket a few tolerances wide around the guess is
+     * tried first, so a good guess costs two evaluations and a Brent step; if it does not bracket a
+     * sign change, the whole interval is used.
+     *
+     * @param fLo   the function value at lo
+     * @param fHi   the function value at hi, of the opposite sign
+     * @param guess where the root is expected, or NaN for no guess
+     * @return the root
+     */
+    public double polish(DoubleUnaryOperator func, double lo, double hi, double fLo, double fHi, double guess) {
+        if (Double.isNaN(guess)) {
+            return brent(func, lo, hi, fLo, fHi);
+        }
+        double delta = 4 * (2 * relativeAccuracy * Math.abs(guess) + absoluteAccuracy);
+        double a = Math.max(lo, guess - delta), b = Math.min(hi, guess + delta);
+        if (a < b) {
+            double fa = a == lo ? fLo : func.applyAsDouble(a);
+            double fb = b == hi ? fHi : func.applyAsDouble(b);
+            if (fa == 0) return a;
+            if (fb == 0) return b;
+            if ((fa < 0 && fb > 0) || (fa > 0 && fb < 0)) {
+                return brent(func, a, b, fa, fb);
+            }
+        }
+        return brent(func, lo, hi, fLo, fHi);
+    }
 
 
-            try {
-                double root = findRoot(func, currentMin, currentMax);
-                roots.add(root);
-            } catch (IllegalArgumentException e) {
-                // No root found in this subinterval; just move to the next one.
+    /**
+     * Finds all roots of the given function from values already sampled on a grid, for deep zoom.
+     * Roots are bracketed wherever consecutive samples change sign, so double roots where the graph only
+     * touches zero are not found here. Only Brent's polishing step calls the function. Brackets, Brent
+     * iterates and the convergence tolerance are all double-double, so the relative and absolute
+     * accuracies may be set far below what a double can resolve.
+     *
+     * @param func the function, only called while polishing a bracket.
+     * @param xs   the sorted sample points.
+     * @param ys   the function values at the sample points.
+     * @return a list of distinct roots.
+     */
+    public List < DoubleDouble > findAllRoots(UnaryOperator < DoubleDouble > func, DoubleDouble[] xs, DoubleDouble[] ys) {
+        List < DoubleDouble > roots = new ArrayList < > ();
+        for (int i = 0; i < xs.length; i++) {
+            if (ys[i].isZero()) {
+                roots.add(xs[i]);
+            } else if (i + 1 < xs.length && ys[i].signum() * ys[i + 1].signum() < 0) {
+                roots.add(brent(func, xs[i], xs[i + 1], ys[i], ys[i + 1]));
             }
+        }
+        if (xs.length < 2 || roots.isEmpty()) {
+            return roots;
+        }
 
 
-            currentMin = currentMax; // Move to the next subinterval.
+        // Filter out roots found twice; as for doubles, distinct roots a fraction of a spacing apart are kept.
+        Collections.sort(roots);
+        DoubleDouble minSeparation = xs[xs.length - 1].subtract(xs[0]).multiply(1e-6).divide(xs.length - 1);
+        List < DoubleDouble > filtered = new ArrayList < > ();
+        DoubleDouble last = roots.get(0);
+        filtered.add(last);
+        for (DoubleDouble root: roots) {
+            if (root.subtract(last).abs().compareTo(minSeparation) > 0) {
+                filtered.add(root);
+                last = root;
+            }
         }
+        return filtered;
+    }
+
+
+    /**
+     * Brent's method in double-double arithmetic; same steps as the double version.
+     */
+    private DoubleDouble brent(UnaryOperator < DoubleDouble > func, DoubleDouble lo, DoubleDouble hi, DoubleDouble fLo, DoubleDouble fHi) {
+        DoubleDouble a = lo, fa = fLo;
+        DoubleDouble b = hi, fb = fHi;
+        DoubleDouble c = a, fc = fa;
+        DoubleDouble d = b.subtract(a), e = d;
+
+
+        // Bisection alone halves the bracket each step, so this bound is never reached for finite values.
+        for (int iteration = 0; iteration < 500; iteration++) {
+            // Swap so that |f(b)| <= |f(c)|
+            if (fc.abs().compareTo(fb.abs()) < 0) {
+                DoubleDouble temp = b;
+                b = c;
+                c = temp;
+                DoubleDouble tempF = fb;
+                fb = fc;
+                fc = tempF;
+            }
 
 
-        // Filter out roots that are too close together.
-        return filterCloseRoots(roots, step * 0.5);
+            final DoubleDouble tol = b.abs().multiply(2 * relativeAccuracy).add(absoluteAccuracy);
+            final DoubleDouble m = c.subtract(b).multiply(0.5);
+
+
+            if (m.abs().compareTo(tol) <= 0 || fb.isZero()) {
+                return b;
+            }
+
+
+            if (e.abs().compareTo(tol) < 0 || fa.abs().compareTo(fb.abs()) <= 0) {
+                d = m;
+                e = d;
+            } else {
+                final DoubleDouble s = fb.divide(fa);
+                DoubleDouble p, q;
+                if (a.equals(c)) {
+                    // Secant method.
+                    p = m.multiply(2).multiply(s);
+                    q = DoubleDouble.ONE.subtract(s);
+                } else {
+                    // Inverse quadratic interpolation.
+                    q = fa.divide(fc);
+                    final DoubleDouble r = fb.divide(fc);
+                    p = s.multiply(m.multiply(2).multiply(q).multiply(q.subtract(r)).subtract(b.subtract(a).multiply(r.add(-1))));
+                    q = q.add(-1).multiply(r.add(-1)).multiply(s.add(-1));
+                }
+                if (p.signum() > 0) {
+                    q = q.negate();
+                } else {
+                    p = p.negate();
+                }
+
+
+                if (p.compareTo(m.multiply(1.5).multiply(q).subtract(tol.multiply(q).abs())) >= 0 ||
+                    p.compareTo(e.multiply(0.5).multiply(q).abs()) >= 0) {
+                    d = m;
+                    e = d;
+                } else {
+                    e = d;
+                    d = p.divide(q);
+                }
+            }
+            a = b;
+            fa = fb;
+            if (d.abs().compareTo(tol) > 0) {
+                b = b.add(d);
+            } else if (m.signum() > 0) {
+                b = b.add(tol);
+            } else {
+                b = b.subtract(tol);
+            }
+            fb = func.apply(b);
+            if ((fb.signum() > 0 && fc.signum() > 0) || (fb.signum() <= 0 && fc.signum() <= 0)) {
+                c = a;
+                fc = fa;
+                d = b.subtract(a);
+                e = d;
+            }
+        }
+        return b;
     }
 
 
@@ -229,7 +578,7 @@ public class RootFinder {
      * @param minSeparation the minimum allowed separation between distinct roots.
      * @return a filtered list of roots.
      */
-    private List < Double > filterCloseRoots(List < Double > roots, double minSeparation) {
+    List < Double > filterCloseRoots(List < Double > roots, double minSeparation) {
         if (roots.isEmpty()) {
             return roots;
         }
@@ -0,0 +1,197 @@
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.DoubleUnaryOperator;
+
+
+/**
+ * Keeps the roots of the current function, and of its difference with every other function, across
+ * pans and zooms.
+ * Samples lie on a lattice of multiples of the sample spacing, so after a pan the samples of the part
+ * still in view are the same as before. Each function or pair remembers the range it has already
+ * searched and at what spacing: at the same spacing (a pan) the roots found there are kept, and only
+ * the cells outside that range are sampled, in one batch for all pairs, and searched. Another spacing
+ * (a zoom) searches the whole view again, polishing each root from the one found before in the same
+ * cell, so the roots are always those a fresh search at the current spacing finds.
+ * Where the samples dip towards zero without changing sign, a tangency search with a fixed
+ * evaluation budget looks for a double root or a pair of close roots, so the cost of a search stays
+ * bounded by the number of samples.
+ * Functions are immutable, so a track stays valid for as long as its functions are plotted.
+ */
+public class RootTracker {
+    public static final int AXIS = -1; // partner index of the zeros
+    private static final int MAX_VIEWS = 8; // a track reaching further than this many view widths restarts at the view
+
+
+    // The roots of one function, or pair, over [lo, hi] searched at the given spacing.
+    private static class Track {
+        final double spacing, lo, hi;
+        final List < Double > roots; // sorted
+
+
+        Track(double spacing, double lo, double hi, List < Double > roots) {
+            this.spacing = spacing;
+            this.lo = lo;
+            this.hi = hi;
+            this.roots = roots;
+        }
+    }
+
+
+    // [current function, partner], the partner null for the zeros
+    private final Map < List < TIUnNspired.Function > , Track > tracks = new HashMap < > ();
+    private final RootFinder rootFinder = new RootFinder(1e-15, 1e-17, 1e-17);
+
+
+    /**
+     * Finds the zeros of the current function and its intersections with every other function over
+     * [minX, maxX], at the resolution of the given number of samples across the view. Must not be
+     * called from more than one thread at a time.
+     *
+     * @param kernel the scene's kernel, compiled from exactly these functions
+     * @return the sorted roots in view against each partner index, AXIS for the zeros; incomplete if the
+     * thread was interrupted
+     */
+    public Map < Integer, List < Double > > update(List < TIUnNspired.Function > functions, int current, FusedKernel kernel,
+        double minX, double maxX, int samples) {
+        tracks.keySet().removeIf(key -> !functions.contains(key.get(0)) || (key.get(1) != null && !functions.contains(key.get(1))));
+        double spacing = (maxX - minX) / (samples - 1);
+        long first = (long) Math.floor(minX / spacing), last = (long) Math.ceil(maxX / spacing); // the view's cells are first .. last - 1
+        long base = first - 1; // the lattice point left of the view, for the dip test at its edge
+        int cells = (int)(last - first);
+
+
+        // the cells each partner still has to search, as [from, to) ranges of cell indices
+        TIUnNspired.Function function = functions.get(current);
+        Map < Integer, long[] > missing = new HashMap < > ();
+        boolean[] needed = new boolean[cells + 3]; // lattice points base .. last + 1 to sample
+        for (int partner = AXIS; partner < functions.size(); partner++) {
+            if (partner == current) continue;
+            Track track = tracks.get(key(function, partner == AXIS ? null : functions.get(partner)));
+            long from = first, to = first; // cells already covered
+            if (track != null && Math.abs(track.spacing - spacing) <= spacing * 1e-9) {
+                from = Math.max(first, (long) Math.ceil(track.lo / spacing));
+                to = Math.min(last, (long) Math.floor(track.hi / spacing));
+                if (from >= to) from = to = first;
+            }
+            long[] ranges = {
+                first, from, to, last
+            };
+            missing.put(partner, ranges);
+            for (int r = 0; r < ranges.length; r += 2) {
+                if (ranges[r] == ranges[r + 1]) continue;
+                // the points of each cell, and one more on either side for the dip test at the range's ends
+                for (long j = ranges[r] - 1; j <= ranges[r + 1] + 1; j++) needed[(int)(j - base)] = true;
+            }
+        }
+
+
+        // one kernel pass over every lattice point some partner needs
+        int count = 0;
+        for (boolean point: needed) {
+            if (point) count++;
+        }
+        double[] xs = new double[count];
+        int[] position = new int[needed.length];
+        for (int j = 0, n = 0; j < needed.length; j++) {
+            position[j] = needed[j] ? n : -1;
+            if (needed[j]) xs[n++] = (base + j) * spacing;
+        }
+        double[][] ys = count == 0 ? new double[functions.size()][0] : kernel.evaluate(xs);
+
+
+        Map < Integer, List < Double > > result = new HashMap < > ();
+        for (int partner = AXIS; partner < functions.size(); partner++) {
+            if (partner == current) continue;
+            if (Thread.currentThread().isInterrupted()) break; // superseded by a newer search
+            TIUnNspired.Function other = partner == AXIS ? null : functions.get(partner);
+            List < TIUnNspired.Function > key = key(function, other);
+            Track track = tracks.get(key);
+            long[] ranges = missing.get(partner);
+            boolean reused = ranges[1] < ranges[2]; // some cells were already covered
+
+
+            DoubleUnaryOperator func = other == null ? function::evaluate : x -> function.evaluate(x) - other.evaluate(x);
+            double[] values = ys[current];
+            double[] otherValues = other == null ? null : ys[partner];
+            List < Double > hints = track == null || reused ? List.of() : track.roots; // roots from the last zoom
+            List < Double > roots = new ArrayList < > ();
+            search(func, values, otherValues, position, base, spacing, ranges[0], ranges[1], hints, roots);
+            search(func, values, otherValues, position, base, spacing, ranges[2], ranges[3], hints, roots);
+
+
+            double lo = first * spacing, hi = last * spacing;
+            if (reused) {
+                for (double root: track.roots) {
+                    if (root >= track.lo && root <= track.hi) roots.add(root);
+                }
+                if (Math.max(hi, track.hi) - Math.min(lo, track.lo) <= MAX_VIEWS * (hi - lo)) {
+                    lo = Math.min(lo, track.lo);
+                    hi = Math.max(hi, track.hi);
+                }
+            }
+            List < Double > kept = new ArrayList < > ();
+            for (double root: rootFinder.filterCloseRoots(roots, spacing * 1e-6)) {
+                if (root >= lo && root <= hi) kept.add(root);
+            }
+            tracks.put(key, new Track(spacing, lo, hi, kept));
+
+
+            List < Double > inView = new ArrayList < > ();
+            for (double root: kept) {
+                if (root >= minX && root <= maxX) inView.add(root);
+            }
+            result.put(partner, inView);
+        }
+        return result;
+    }
+
+
+    // Brackets the sign changes in cells [from, to) and polishes them, from a hint in the cell if any.
+    // Lattice points from .. to that dip towards zero without a sign change, against the points on either
+    // side of them, get a bounded tangency search.
+    private void search(DoubleUnaryOperator func, double[] values, double[] otherValues, int[] position, long base, double spacing,
+        long from, long to, List < Double > hints, List < Double > roots) {
+        if (from == to) {
+            return;
+        }
+        for (long j = from; j < to; j++) {
+            double fa = sample(values, otherValues, position[(int)(j - base)]);
+            double fb = sample(values, otherValues, position[(int)(j - base) + 1]);
+            double x0 = j * spacing, x1 = (j + 1) * spacing;
+            if (fa == 0 && fb == 0) {
+                continue; // the functions coincide here, which is no single point of interest
+            } else if (fa == 0) {
+                roots.add(x0); // landed exactly on a root
+            } else if (fb == 0) {
+                roots.add(x1);
+            } else if ((fa < 0 && fb > 0) || (fa > 0 && fb < 0)) {
+                int hint = Collections.binarySearch(hints, x0);
+                hint = hint >= 0 ? hint : -hint - 1;
+                roots.add(rootFinder.polish(func, x0, x1, fa, fb, hint < hints.size() && hints.get(hint) <= x1 ? hints.get(hint) : Double.NaN));
+            }
+        }
+        for (long j = from; j <= to; j++) {
+            double before = sample(values, otherValues, position[(int)(j - base) - 1]);
+            double at = sample(values, otherValues, position[(int)(j - base)]);
+            double after = sample(values, otherValues, position[(int)(j - base) + 1]);
+            if (RootFinder.isDip(before, at, after)) {
+                double x = j * spacing;
+                rootFinder.addTangentRoots(func, x - spacing, x, x + spacing, before, after, RootFinder.TANGENT_BUDGET, roots);
+            }
+        }
+    }
+
+
+    private static double sample(double[] values, double[] otherValues, int index) {
+        return otherValues == null ? values[index] : values[index] - otherValues[index];
+    }
+
+
+    private static List < TIUnNspired.Function > key(TIUnNspired.Function function, TIUnNspired.Function partner) {
+        return Arrays.asList(function, partner);
+    }
+}
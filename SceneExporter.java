@@ -0,0 +1,478 @@
+import java.awt.*;
+import java.awt.geom.*;
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.CompletableFuture;
+import java.util.stream.IntStream;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+
+
+/**
+ * Exports a scene at print resolution without ever holding the whole picture.
+ * PNG output is rendered band by band, each band as tiles drawn in parallel, and streamed row by row
+ * into a PNG encoder while the next band renders; SVG output is written element by element, with
+ * explicit curves emitted in vertical strips and the other curves written out as they are traced,
+ * relations one band at a time. Memory stays bounded by one or two bands (or strips), whatever the
+ * size of the output.
+ */
+public class SceneExporter {
+    private static final int BAND_ROWS = 128; // rows rendered per band; a multiple of the implicit plotter's coarse cell
+    private static final int TILE_COLUMNS = 1024; // columns per parallel tile of a band
+    private static final int STRIP_COLUMNS = 1024; // columns per kernel pass when writing SVG
+    private static final int TICK_SPACING = 50; // screen pixels between axis ticks, as in the canvas
+    private static final int PAD_STEP = 8; // tiles are padded by whole coarse cells of the implicit plotter, keeping its lattice
+
+
+    private final List < TIUnNspired.Function > functions;
+    private final FusedKernel kernel;
+    private final int currentFunctionIndex;
+    private final List < TIUnNspired.Point > zeros;
+    private final List < TIUnNspired.Point > intersections;
+    private final double xMin, yMax, pixel; // graph coordinates of the top-left corner, graph units per output pixel
+    private final int width, height; // output size in pixels
+    private final double magnification; // output pixels per screen pixel, for strokes, dots and text
+
+
+    /**
+     * @param functions            the functions of the scene, in order
+     * @param currentFunctionIndex the function drawn bold and labelled
+     * @param zeros                zeros of the current function to mark, possibly empty
+     * @param intersections        intersections to mark, possibly empty
+     * @param xMin                 graph x of the left edge
+     * @param yMax                 graph y of the top edge
+     * @param pixel                graph units per output pixel
+     * @param width                output width in pixels
+     * @param height               output height in pixels
+     * @param magnification        output pixels per screen pixel
+     */
+    public SceneExporter(List < TIUnNspired.Function > functions, int currentFunctionIndex, List < TIUnNspired.Point > zeros,
+        List < TIUnNspired.Point > intersections, double xMin, double yMax, double pixel, int width, int height, double magnification) {
+        this.functions = List.copyOf(functions);
+        this.kernel = FusedKernel.compile(this.functions);
+        this.currentFunctionIndex = currentFunctionIndex;
+        this.zeros = List.copyOf(zeros);
+        this.intersections = List.copyOf(intersections);
+        this.xMin = xMin;
+        this.yMax = yMax;
+        this.pixel = pixel;
+        this.width = width;
+        this.height = height;
+        this.magnification = magnification;
+    }
+
+
+    /**
+     * Writes the scene as PNG or SVG, chosen by the file's extension.
+     */
+    public void write(File file) throws IOException {
+        if (file.getName().toLowerCase(Locale.ROOT).endsWith(".svg")) {
+            try (Writer out = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(file), StandardCharsets.UTF_8))) {
+                writeSvg(out);
+            }
+        } else {
+            try (OutputStream out = new BufferedOutputStream(new FileOutputStream(file))) {
+                writePng(out);
+            }
+        }
+    }
+
+
+    /**
+     * Streams the scene as a PNG. Each band of rows is drawn as tiles in parallel; the next band is
+     * rendered while the current one is compressed and written.
+     */
+    public void writePng(OutputStream out) throws IOException {
+        PngEncoder png = new PngEncoder(out, width, height);
+        CompletableFuture < BufferedImage[] > next = CompletableFuture.supplyAsync(() -> renderBand(0));
+        byte[] row = new byte[width * 3];
+        for (int y0 = 0; y0 < height; y0 += BAND_ROWS) {
+            BufferedImage[] tiles = next.join();
+            int following = y0 + BAND_ROWS;
+            next = following < height ? CompletableFuture.supplyAsync(() -> renderBand(following)) : null;
+            for (int r = 0; r < tiles[0].getHeight(); r++) {
+                for (int t = 0; t < tiles.length; t++) {
+                    int columns = tiles[t].getWidth();
+                    int[] pixels = ((DataBufferInt) tiles[t].getRaster().getDataBuffer()).getData();
+                    for (int c = 0; c < columns; c++) {
+                        int rgb = pixels[r * columns + c];
+                        int i = (t * TILE_COLUMNS + c) * 3;
+                        row[i] = (byte)(rgb >> 16);
+                        row[i + 1] = (byte)(rgb >> 8);
+                        row[i + 2] = (byte) rgb;
+                    }
+                }
+                png.writeRow(row);
+            }
+        }
+        png.finish();
+    }
+
+
+    // Renders the rows [y0, y0 + BAND_ROWS) as tiles side by side, in parallel.
+    private BufferedImage[] renderBand(int y0) {
+        int rows = Math.min(BAND_ROWS, height - y0);
+        int tiles = (width + TILE_COLUMNS - 1) / TILE_COLUMNS;
+        return IntStream.range(0, tiles).parallel().mapToObj(t ->
+            renderTile(t * TILE_COLUMNS, y0, Math.min(TILE_COLUMNS, width - t * TILE_COLUMNS), rows)).toArray(BufferedImage[]::new);
+    }
+
+
+    // Draws the part of the scene covering the given rectangle of the output; geometry is computed for
+    // this rectangle, padded by half the widest stroke, only, so no tile depends on the size of the whole
+    // picture and strokes crossing a tile's edge are not cut off there.
+    private BufferedImage renderTile(int x0, int y0, int columns, int rows) {
+        BufferedImage image = new BufferedImage(columns, rows, BufferedImage.TYPE_INT_RGB);
+        Graphics2D g = image.createGraphics();
+        g.setColor(Color.WHITE);
+        g.fillRect(0, 0, columns, rows);
+        g.setRenderingHint(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_ON);
+        g.setRenderingHint(RenderingHints.KEY_TEXT_ANTIALIASING, RenderingHints.VALUE_TEXT_ANTIALIAS_ON);
+        g.setFont(g.getFont().deriveFont((float)(g.getFont().getSize2D() * magnification)));
+        g.translate(-x0, -y0); // draw in output coordinates from here on
+
+
+        // axes with ticks every TICK_SPACING screen pixels, like the canvas
+        double axisX = -xMin / pixel, axisY = yMax / pixel;
+        g.setStroke(new BasicStroke((float) magnification));
+        g.setColor(Color.BLACK);
+        g.draw(new Line2D.Double(axisX, y0, axisX, y0 + rows));
+        g.draw(new Line2D.Double(x0, axisY, x0 + columns, axisY));
+        g.setColor(Color.GRAY);
+        double tick = TICK_SPACING * magnification;
+        double margin = 100 * magnification; // labels reach into neighbouring tiles
+        for (long k = (long) Math.floor((x0 - margin - axisX) / tick); axisX + k * tick <= x0 + columns + margin; k++) {
+            double x = axisX + k * tick;
+            g.draw(new Line2D.Double(x, axisY - 5 * magnification, x, axisY + 5 * magnification));
+            if (k != 0) g.drawString(tickLabel(k * tick * pixel), (float)(x - 15 * magnification), (float)(axisY + 20 * magnification));
+        }
+        for (long k = (long) Math.floor((y0 - margin - axisY) / tick); axisY + k * tick <= y0 + rows + margin; k++) {
+            double y = axisY + k * tick;
+            g.draw(new Line2D.Double(axisX - 5 * magnification, y, axisX + 5 * magnification, y));
+            if (k != 0) g.drawString(tickLabel(-k * tick * pixel), (float)(axisX + 10 * magnification), (float)(y + 5 * magnification));
+        }
+
+
+        // curves: one kernel pass over this tile's columns for the explicit functions, tracing for the rest,
+        // both reaching past the tile by half the widest stroke (2 * magnification) and a pixel of antialiasing
+        int pad = ((int) Math.ceil(magnification) + 1 + PAD_STEP - 1) / PAD_STEP * PAD_STEP;
+        double[][] ys = kernel.evaluateGrid(xMin + (x0 - pad) * pixel, pixel, columns + 2 * pad + 1);
+        for (int k = 0; k < functions.size(); k++) {
+            g.setColor(TIUnNspired.graphColor(k));
+            g.setStroke(new BasicStroke((float)((k == currentFunctionIndex ? 2 : 1) * magnification)));
+            if (functions.get(k).isExplicit()) {
+                Path2D.Double curve = new Path2D.Double();
+                explicitCurve(ys[k], x0 - pad, PathSink.of(curve));
+                g.draw(curve);
+            } else {
+                g.translate(x0 - pad, y0 - pad); // traces are relative to the padded tile
+                g.draw(functions.get(k).trace(xMin + (x0 - pad) * pixel, yMax - (y0 - pad) * pixel, pixel, columns + 2 * pad, rows + 2 * pad));
+                g.translate(pad - x0, pad - y0);
+            }
+        }
+
+
+        // zeros, intersections and the label of the current function
+        if (currentFunctionIndex < functions.size()) {
+            g.setColor(TIUnNspired.graphColor(currentFunctionIndex));
+        }
+        double dot = 6 * magnification;
+        for (TIUnNspired.Point zero: zeros) {
+            double x = (zero.x - xMin) / pixel, y = (yMax - zero.y) / pixel;
+            g.fill(new Ellipse2D.Double(x - dot / 2, y - dot / 2, dot, dot));
+            g.drawString(zero.toString(), (float)(x + dot), (float)(y - dot));
+        }
+        for (TIUnNspired.Point intersection: intersections) {
+            double x = (intersection.x - xMin) / pixel, y = (yMax - intersection.y) / pixel;
+            g.fill(new Rectangle2D.Double(x - dot / 2, y - dot / 2, dot, dot));
+            g.drawString(intersection.toString(), (float)(x + dot), (float)(y - dot));
+        }
+        if (currentFunctionIndex < functions.size()) {
+            g.drawString(functionLabel(), (float)(10 * magnification), (float)(10 * magnification));
+        }
+        g.dispose();
+        return image;
+    }
+
+
+    /**
+     * Writes the scene as SVG, element by element. Explicit curves are emitted as one path per strip of
+     * columns, so only one strip of samples is held at a time; the other curves are written as they are
+     * traced, relations one band of rows at a time.
+     */
+    public void writeSvg(Writer out) throws IOException {
+        out.write("<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n");
+        out.write("<svg xmlns=\"http://www.w3.org/2000/svg\" width=\"" + width + "\" height=\"" + height + "\" viewBox=\"0 0 " + width + " " + height +
+            "\" font-family=\"sans-serif\" font-size=\"" + number(12 * magnification) + "\">\n");
+        out.write("<rect width=\"100%\" height=\"100%\" fill=\"white\"/>\n");
+
+
+        double axisX = -xMin / pixel, axisY = yMax / pixel;
+        String stroke = " stroke-width=\"" + number(magnification) + "\"";
+        out.write("<g stroke=\"black\"" + stroke + ">");
+        out.write("<line x1=\"" + number(axisX) + "\" y1=\"0\" x2=\"" + number(axisX) + "\" y2=\"" + height + "\"/>");
+        out.write("<line x1=\"0\" y1=\"" + number(axisY) + "\" x2=\"" + width + "\" y2=\"" + number(axisY) + "\"/></g>\n");
+        double tick = TICK_SPACING * magnification;
+        out.write("<g stroke=\"gray\" fill=\"gray\"" + stroke + ">\n");
+        for (long k = (long) Math.ceil(-axisX / tick); axisX + k * tick <= width; k++) {
+            double x = axisX + k * tick;
+            out.write("<line x1=\"" + number(x) + "\" y1=\"" + number(axisY - 5 * magnification) + "\" x2=\"" + number(x) + "\" y2=\"" + number(axisY + 5 * magnification) + "\"/>");
+            if (k != 0) out.write(text(x - 15 * magnification, axisY + 20 * magnification, tickLabel(k * tick * pixel)));
+            out.write("\n");
+        }
+        for (long k = (long) Math.ceil(-axisY / tick); axisY + k * tick <= height; k++) {
+            double y = axisY + k * tick;
+            out.write("<line x1=\"" + number(axisX - 5 * magnification) + "\" y1=\"" + number(y) + "\" x2=\"" + number(axisX + 5 * magnification) + "\" y2=\"" + number(y) + "\"/>");
+            if (k != 0) out.write(text(axisX + 10 * magnification, y + 5 * magnification, tickLabel(-k * tick * pixel)));
+            out.write("\n");
+        }
+        out.write("</g>\n");
+
+
+        // relations and parametric/polar curves, each streamed into one path as it is traced
+        try {
+            for (int k = 0; k < functions.size(); k++) {
+                if (!functions.get(k).isExplicit()) {
+                    SvgPath path = new SvgPath(out, k);
+                    functions.get(k).trace(xMin, yMax, pixel, width, height, path);
+                    path.close();
+                }
+            }
+            // explicit functions, strip by strip with one kernel pass per strip
+            for (int x0 = 0; x0 < width; x0 += STRIP_COLUMNS) {
+                int columns = Math.min(STRIP_COLUMNS, width - x0);
+                double[][] ys = kernel.evaluateGrid(xMin + x0 * pixel, pixel, columns + 1);
+                for (int k = 0; k < functions.size(); k++) {
+                    if (functions.get(k).isExplicit()) {
+                        SvgPath path = new SvgPath(out, k);
+                        explicitCurve(ys[k], x0, path);
+                        path.close();
+                    }
+                }
+            }
+        } catch (UncheckedIOException ex) {
+            throw ex.getCause();
+        }
+
+
+        if (currentFunctionIndex < functions.size()) {
+            Color color = TIUnNspired.graphColor(currentFunctionIndex);
+            double dot = 6 * magnification;
+            out.write("<g fill=\"" + hex(color) + "\">\n");
+            for (TIUnNspired.Point zero: zeros) {
+                double x = (zero.x - xMin) / pixel, y = (yMax - zero.y) / pixel;
+                out.write("<circle cx=\"" + number(x) + "\" cy=\"" + number(y) + "\" r=\"" + number(dot / 2) + "\"/>");
+                out.write(text(x + dot, y - dot, zero.toString()) + "\n");
+            }
+            for (TIUnNspired.Point intersection: intersections) {
+                double x = (intersection.x - xMin) / pixel, y = (yMax - intersection.y) / pixel;
+                out.write("<rect x=\"" + number(x - dot / 2) + "\" y=\"" + number(y - dot / 2) + "\" width=\"" + number(dot) + "\" height=\"" + number(dot) + "\"/>");
+                out.write(text(x + dot, y - dot, intersection.toString()) + "\n");
+            }
+            out.write(text(10 * magnification, 10 * magnification, functionLabel()) + "\n");
+            out.write("</g>\n");
+        }
+        out.write("</svg>\n");
+        out.flush();
+    }
+
+
+    // One <path> element whose data is written segment by segment as the curve arrives; nothing is
+    // written for a curve with no segments.
+    private class SvgPath implements PathSink {
+        private final Writer out;
+        private final int k;
+        private boolean open = false;
+
+
+        SvgPath(Writer out, int k) {
+            this.out = out;
+            this.k = k;
+        }
+
+
+        @Override
+        public void moveTo(double x, double y) {
+            write("M" + number(x) + " " + number(y));
+        }
+
+
+        @Override
+        public void lineTo(double x, double y) {
+            write("L" + number(x) + " " + number(y));
+        }
+
+
+        private void write(String segment) {
+            try {
+                if (!open) {
+                    out.write("<path fill=\"none\" stroke=\"" + hex(TIUnNspired.graphColor(k)) + "\" stroke-width=\"" +
+                        number((k == currentFunctionIndex ? 2 : 1) * magnification) + "\" d=\"");
+                    open = true;
+                }
+                out.write(segment);
+            } catch (IOException ex) {
+                throw new UncheckedIOException(ex); // PathSink cannot throw IOException
+            }
+        }
+
+
+        void close() throws IOException {
+            if (open) {
+                out.write("\"/>\n");
+            }
+        }
+    }
+
+
+    // Polyline of an explicit function sampled at the columns x0, x0 + 1, ... in output coordinates,
+    // broken where it is undefined, leaves the picture by more than its height, or jumps as the canvas
+    // decides (poles).
+    private void explicitCurve(double[] y, int x0, PathSink out) {
+        boolean drawing = false;
+        for (int i = 0; i + 1 < y.length; i++) {
+            double row1 = (yMax - y[i]) / pixel, row2 = (yMax - y[i + 1]) / pixel;
+            if (row1 > -height && row1 < 2.0 * height && row2 > -height && row2 < 2.0 * height && TIUnNspired.connects(0, y[i], pixel, y[i + 1])) {
+                if (!drawing) {
+                    out.moveTo(x0 + i, row1);
+                    drawing = true;
+                }
+                out.lineTo(x0 + i + 1, row2);
+            } else {
+                drawing = false;
+            }
+        }
+    }
+
+
+    private String functionLabel() {
+        return "f" + currentFunctionIndex + "(x): " + functions.get(currentFunctionIndex).getExpression();
+    }
+
+
+    private static String tickLabel(double value) {
+        return String.format("%.1f", value);
+    }
+
+
+    private static String text(double x, double y, String text) {
+        String escaped = text.replace("&", "&amp;").replace("<", "&lt;").replace(">", "&gt;");
+        return "<text x=\"" + number(x) + "\" y=\"" + number(y) + "\">" + escaped + "</text>";
+    }
+
+
+    private static String number(double value) {
+        return String.format(Locale.ROOT, "%.2f", value);
+    }
+
+
+    private static String hex(Color color) {
+        return String.format("#%06x", color.getRGB() & 0xffffff);
+    }
+
+
+    /**
+     * Minimal streaming PNG writer for 8-bit RGB images: rows go through one deflate stream that is cut
+     * into IDAT chunks as it fills, so nothing larger than a row and a chunk is ever buffered.
+     */
+    private static class PngEncoder {
+        private static final int CHUNK_BYTES = 1 << 16;
+
+
+        private final DataOutputStream out;
+        private final DeflaterOutputStream deflater;
+        private final Deflater compressor = new Deflater();
+
+
+        PngEncoder(OutputStream out, int width, int height) throws IOException {
+            this.out = new DataOutputStream(out);
+            this.out.write(new byte[] {
+                (byte) 0x89, 'P', 'N', 'G', '\r', '\n', 0x1a, '\n'
+            });
+            ByteArrayOutputStream header = new ByteArrayOutputStream();
+            DataOutputStream fields = new DataOutputStream(header);
+            fields.writeInt(width);
+            fields.writeInt(height);
+            fields.write(new byte[] {
+                8, 2, 0, 0, 0 // 8 bits per channel, RGB, deflate, adaptive filtering, no interlace
+            });
+            chunk("IHDR", header.toByteArray(), header.size());
+            deflater = new DeflaterOutputStream(new IdatStream(), compressor, CHUNK_BYTES);
+        }
+
+
+        void writeRow(byte[] rgb) throws IOException {
+            deflater.write(0); // filter type None
+            deflater.write(rgb);
+        }
+
+
+        void finish() throws IOException {
+            deflater.finish();
+            deflater.flush(); // the last partial IDAT chunk
+            compressor.end();
+            chunk("IEND", new byte[0], 0);
+            out.flush();
+        }
+
+
+        private void chunk(String type, byte[] data, int length) throws IOException {
+            byte[] name = type.getBytes(StandardCharsets.US_ASCII);
+            CRC32 crc = new CRC32();
+            crc.update(name);
+            crc.update(data, 0, length);
+            out.writeInt(length);
+            out.write(name);
+            out.write(data, 0, length);
+            out.writeInt((int) crc.getValue());
+        }
+
+
+        // Collects compressed bytes and emits them as IDAT chunks of at most CHUNK_BYTES.
+        private class IdatStream extends OutputStream {
+            private final byte[] buffer = new byte[CHUNK_BYTES];
+            private int size = 0;
+
+
+            @Override
+            public void write(int b) throws IOException {
+                write(new byte[] {
+                    (byte) b
+                }, 0, 1);
+            }
+
+
+            @Override
+            public void write(byte[] data, int offset, int length) throws IOException {
+                while (length > 0) {
+                    int n = Math.min(length, CHUNK_BYTES - size);
+                    System.arraycopy(data, offset, buffer, size, n);
+                    size += n;
+                    offset += n;
+                    length -= n;
+                    if (size == CHUNK_BYTES) flush();
+                }
+            }
+
+
+            @Override
+            public void flush() throws IOException {
+                if (size > 0) {
+                    chunk("IDAT", buffer, size);
+                    size = 0;
+                }
+            }
+
+
+            @Override
+            public void close() throws IOException {
+                flush();
+            }
+        }
+    }
+}
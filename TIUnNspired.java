@@ -1,21 +1,52 @@
 import java.awt.*;
 import java.awt.event.*;
+import java.io.File;
+import java.io.IOException;
 import java.text.DecimalFormat;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
 import java.util.function.DoubleUnaryOperator;
+import java.util.function.Predicate;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.stream.IntStream;
 import javax.swing.*;
+import javax.swing.event.DocumentEvent;
+import javax.swing.event.DocumentListener;
+import javax.swing.text.BadLocationException;
+import javax.swing.text.DefaultHighlighter;
+import javax.swing.text.Highlighter;
 import java.awt.geom.*;
 
 
 public class TIUnNspired extends Canvas {
     private static int width = 800;
     private static int height = 600;
-    private int scale = 50; // dynamic scale (pixels per unit)
+    private double scale = 50; // dynamic scale (pixels per unit)
+    private boolean deepZoom = false; // double-double view transform and evaluation
+    private static final double MAX_DEEP_SCALE = 1e28; // leaves a few pixels of double-double headroom
     private static ArrayList < Function > functions;
     private int currentFunctionIndex = 0;
-    private static boolean addedAFunction = false;
+    private FusedKernel kernel; // all functions compiled into one shared DAG
+    private ArrayList < Function > kernelFunctions = new ArrayList < > (); // the functions the kernel was built from
+    private ValueTableModel valueTable; // tabulates the same kernel, may be null
+    private JList < Function > functionList; // the scrollable list of functions, may be null
+    private FunctionListModel functionListModel; // its model, a live view of functions
 
 
+    // the first functions get these colors, later ones are generated by graphColor
     private static Color[] graphColors = new Color[] {
         Color.BLUE,
             Color.RED,
@@ -30,11 +61,39 @@ public class TIUnNspired extends Canvas {
     };
 
 
-    private ArrayList < Point > zeros = new ArrayList < > (); // to store zeros of the function
-    private ArrayList < Point > intersections = new ArrayList < > (); // to store intersections between functions
+    private PointsOfInterest poi; // zeros, intersections and area of the current function; null until the first search ends
+    private int poiGeneration = 0; // numbers the searches so results of superseded ones are dropped
+    private Future < ? > poiTask;
+    private final ExecutorService poiWorker = daemonExecutor("points-of-interest");
+    private final RootTracker rootTracker = new RootTracker(); // confined to poiWorker
 
 
-    private double xOffset = 0, yOffset = 0;
+    private Preview preview; // ghost of the input being typed, null when there is none
+    private double[] previewView; // the view the latest preview was requested for
+    private int previewGeneration = 0;
+    private Future < ? > previewTask;
+    private final ExecutorService previewWorker = latestTaskExecutor("expression-preview");
+    private Consumer < Preview > previewListener; // told about every published preview, may be null
+
+
+    private static final int EXPORT_MAGNIFICATION = 10; // exported pictures are this many times the window size
+    private final ExecutorService exportWorker = daemonExecutor("scene-export");
+    private String status; // shown at the bottom of the canvas, e.g. while and after exporting
+
+
+    private Definitions definitions = Definitions.NONE; // g(t)=..., a=... entered so far
+    private int scopeVersion = 0; // bumped whenever a name may resolve differently
+    private static final Pattern PLOTTED_CALL = Pattern.compile("(?<![A-Za-z0-9])f(\\d+)(?=\\s*\\()");
+
+
+    private DoubleDouble xOffset = DoubleDouble.ZERO, yOffset = DoubleDouble.ZERO;
+    private final Map < Function, Path2D.Double > traced = new HashMap < > (); // relations and parametric/polar curves drawn in tracedView
+    private double[] tracedView; // the view the traced curves were traced for
+    private static final int POI_SAMPLES = 2001; // 1000 subintervals plus their midpoints
+
+
+    private static final int AREA_OFF = -2, AREA_AXIS = RootTracker.AXIS;
+    private int areaTarget = AREA_OFF; // the function (or the x-axis) the current function's area is measured against
 
 
     public TIUnNspired(ArrayList < Function > functions) {
@@ -54,69 +113,47 @@ public class TIUnNspired extends Canvas {
             @Override
             public void keyPressed(KeyEvent e) {
                 switch (e.getKeyChar()) {
-                    case '+', '=' - > zoom(true); // Zoom In
-                    case '-', '_' - > zoom(false); // Zoom Out
+                    case '+', '=' -> zoom(true); // Zoom In
+                    case '-', '_' -> zoom(false); // Zoom Out
+                    case 'd', 'D' -> toggleDeepZoom();
+                    case 'a', 'A' -> cycleAreaTarget();
+                    case 'e', 'E' -> exportScene();
                 }
 
 
                 switch (e.getKeyCode()) {
-                    case KeyEvent.VK_LEFT - > {
-                        xOffset -= 0.5;repaint();
+                    case KeyEvent.VK_LEFT -> {
+                        xOffset = xOffset.add(-panStep());calculatePOI();repaint();
                     }
-                    case KeyEvent.VK_RIGHT - > {
-                        xOffset += 0.5;repaint();
+                    case KeyEvent.VK_RIGHT -> {
+                        xOffset = xOffset.add(panStep());calculatePOI();repaint();
                     }
-                    case KeyEvent.VK_UP - > {
-                        yOffset -= 0.5;repaint();
+                    case KeyEvent.VK_UP -> {
+                        yOffset = yOffset.add(-panStep());repaint();
                     }
-                    case KeyEvent.VK_DOWN - > {
-                        yOffset += 0.5;repaint();
+                    case KeyEvent.VK_DOWN -> {
+                        yOffset = yOffset.add(panStep());repaint();
                     }
 
 
-                    case KeyEvent.VK_0 - > {
-                        currentFunctionIndex = 0;calculatePOI();repaint();
-                    }
-                    case KeyEvent.VK_1 - > {
-                        currentFunctionIndex = 1;calculatePOI();repaint();
-                    }
-                    case KeyEvent.VK_2 - > {
-                        currentFunctionIndex = 2;calculatePOI();repaint();
-                    }
-                    case KeyEvent.VK_3 - > {
-                        currentFunctionIndex = 3;calculatePOI();repaint();
-                    }
-                    case KeyEvent.VK_4 - > {
-                        currentFunctionIndex = 4;calculatePOI();repaint();
-                    }
-                    case KeyEvent.VK_5 - > {
-                        currentFunctionIndex = 5;calculatePOI();repaint();
-                    }
-                    case KeyEvent.VK_6 - > {
-                        currentFunctionIndex = 6;calculatePOI();repaint();
-                    }
-                    case KeyEvent.VK_7 - > {
-                        currentFunctionIndex = 7;calculatePOI();repaint();
-                    }
-                    case KeyEvent.VK_8 - > {
-                        currentFunctionIndex = 8;calculatePOI();repaint();
-                    }
-                    case KeyEvent.VK_9 - > {
-                        currentFunctionIndex = 9;calculatePOI();repaint();
-                    }
+                    case KeyEvent.VK_0 -> selectFunction(0);
+                    case KeyEvent.VK_1 -> selectFunction(1);
+                    case KeyEvent.VK_2 -> selectFunction(2);
+                    case KeyEvent.VK_3 -> selectFunction(3);
+                    case KeyEvent.VK_4 -> selectFunction(4);
+                    case KeyEvent.VK_5 -> selectFunction(5);
+                    case KeyEvent.VK_6 -> selectFunction(6);
+                    case KeyEvent.VK_7 -> selectFunction(7);
+                    case KeyEvent.VK_8 -> selectFunction(8);
+                    case KeyEvent.VK_9 -> selectFunction(9);
+                    case KeyEvent.VK_PAGE_UP -> selectFunction(currentFunctionIndex - 1);
+                    case KeyEvent.VK_PAGE_DOWN -> selectFunction(currentFunctionIndex + 1);
 
 
-                    case KeyEvent.VK_DELETE, KeyEvent.VK_BACK_SPACE - > {
-                        if (functions.size() > 1) {
-                            functions.remove(currentFunctionIndex);
-                            if (currentFunctionIndex > 0) currentFunctionIndex--;
-                            calculatePOI();
-                            repaint();
-                        }
-                    }
+                    case KeyEvent.VK_DELETE, KeyEvent.VK_BACK_SPACE -> deleteFunction(currentFunctionIndex);
 
 
-                    default - > yOffset += 0; // No action for other keys
+                    default -> {} // No action for other keys
                 }
             }
         });
@@ -131,14 +168,16 @@ public class TIUnNspired extends Canvas {
         int mouseY = MouseInfo.getPointerInfo().getLocation().y - getLocationOnScreen().y;
 
 
-        // Convert mouse position to graph coordinates
-        double graphX = (mouseX - getWidth() / 2.0) / scale + xOffset;
-        double graphY = (getHeight() / 2.0 - mouseY) / scale + yOffset;
+        // Convert mouse position to graph coordinates (kept in double-double so deep zoom stays centered)
+        DoubleDouble graphX = xOffset.add((mouseX - getWidth() / 2.0) / scale);
+        DoubleDouble graphY = yOffset.negate().add((getHeight() / 2.0 - mouseY) / scale);
 
 
         // Adjust scale
-        int oldScale = scale;
-        if (zoomIn) {
+        double oldScale = scale;
+        if (deepZoom) {
+            scale = zoomIn ? Math.min(scale * 2, MAX_DEEP_SCALE) : Math.max(scale / 2, 1);
+        } else if (zoomIn) {
             scale = Math.min(scale + 20, 1000); // Upper limit
         } else {
             scale = Math.max(scale - 20, 1); // Lower limit
@@ -146,8 +185,8 @@ public class TIUnNspired extends Canvas {
 
 
         // Adjust offsets to keep the zoom centered
-        xOffset += graphX - ((mouseX - getWidth() / 2.0) / scale + xOffset);
-        yOffset += graphY - ((getHeight() / 2.0 - mouseY) / scale + yOffset);
+        xOffset = graphX.add(-(mouseX - getWidth() / 2.0) / scale);
+        yOffset = graphY.negate().add((getHeight() / 2.0 - mouseY) / scale);
 
 
         if (oldScale != scale) {
@@ -157,14 +196,413 @@ public class TIUnNspired extends Canvas {
     }
 
 
+    /**
+     * Switches between the standard view (scale stepped linearly up to 1000 pixels per unit) and deep
+     * zoom, where the scale doubles per step and the view, the curves and the root search all run in
+     * double-double arithmetic.
+     */
+    private void toggleDeepZoom() {
+        deepZoom = !deepZoom;
+        if (!deepZoom) {
+            scale = Math.max(1, Math.min(1000, Math.round(scale)));
+        }
+        calculatePOI();
+        repaint();
+    }
+
+
+    // Cycles the area shading: off, against the x-axis, then against each other function.
+    private void cycleAreaTarget() {
+        do {
+            areaTarget++;
+        } while (areaTarget < functions.size() && areaTarget >= 0 && (areaTarget == currentFunctionIndex || !functions.get(areaTarget).isExplicit()));
+        if (areaTarget >= functions.size()) {
+            areaTarget = AREA_OFF;
+        }
+        calculatePOI();
+        repaint();
+    }
+
+
+    /**
+     * Makes the function at the given index current and scrolls the function list to it.
+     * Indices outside the function list are ignored.
+     */
+    private void selectFunction(int index) {
+        if (index < 0 || index >= functions.size()) {
+            return;
+        }
+        currentFunctionIndex = index;
+        calculatePOI();
+        repaint();
+        if (functionList != null) {
+            functionList.setSelectedIndex(index);
+            functionList.ensureIndexIsVisible(index);
+        }
+    }
+
+
+    /**
+     * @return the color of the k-th function; past the fixed palette, hues step by the golden angle
+     * so any number of neighbouring functions stay distinguishable.
+     */
+    static Color graphColor(int k) {
+        if (k < graphColors.length) {
+            return graphColors[k];
+        }
+        float hue = (float)((k * 0.6180339887498949) % 1.0);
+        return Color.getHSBColor(hue, 0.85f, k % 2 == 0 ? 0.75f : 0.55f);
+    }
+
+
+    /**
+     * @return the definitions with f0, f1, ... naming the functions plotted now.
+     */
+    private Definitions scope() {
+        return definitions.withPlotted(functions);
+    }
+
+
+    /**
+     * Handles an input line: a definition is installed, anything else is plotted and selected.
+     * Must be called on the event dispatch thread.
+     *
+     * @throws IllegalArgumentException if the line is invalid.
+     */
+    void submit(String input) {
+        if (Definitions.isDefinition(input)) {
+            try {
+                define(input);
+            } catch (IllegalArgumentException ex) {
+                status = ex.getMessage(); // a dependent may be what fails, which the preview cannot show
+                repaint();
+                throw ex;
+            }
+            preview("");
+            return;
+        }
+        // reuse the function the preview already compiled for this text and these names
+        Preview preview = this.preview;
+        Function
+
+        function = preview != null && preview.function != null && preview.text.equals(input) && preview.scopeVersion == scopeVersion ?
+            preview.function : new Function(input, Color.BLACK, scope());
+
+
+        functions.add(function);
+        preview("");
+        selectFunction(functions.size() - 1);
+    }
+
+
+    /**
+     * Adds or replaces a definition. Only the definitions and functions built from it are recompiled,
+     * in an order where everything they use is already up to date; if any of them no longer compiles,
+     * nothing changes.
+     *
+     * @throws IllegalArgumentException if the definition or one of its dependents is invalid.
+     */
+    private void define(String text) {
+        Definitions updated = definitions.define(text);
+        String name = Definitions.nameOf(text);
+        List < Function > recompiled = new ArrayList < > (functions);
+        int count = 0;
+        for (int k = 0; k < recompiled.size(); k++) {
+            Function function = recompiled.get(k);
+            if (!function.getReferences().contains(name)) {
+                continue;
+            }
+            try {
+                // references to other plotted functions point backwards, so f0 .. f(k-1) are current here
+                recompiled.set(k, new Function(function.getExpression(), function.getColor(), updated.withPlotted(recompiled)));
+                count++;
+            } catch (IllegalArgumentException ex) {
+                throw new IllegalArgumentException("f" + k + " depends on " + name + ": " + ex.getMessage());
+            }
+        }
+        definitions = updated;
+        scopeVersion++;
+        for (int k = 0; k < recompiled.size(); k++) {
+            functions.set(k, recompiled.get(k));
+        }
+        status = "Defined " + name + (count == 0 ? "" : ", recompiled " + count + (count == 1 ? " function" : " functions"));
+        calculatePOI();
+        repaint();
+    }
+
+
+    /**
+     * Removes a plotted function unless others use it. The later functions move down one place, so
+     * references to them in the remaining expressions are renumbered and those are recompiled.
+     */
+    private void deleteFunction(int index) {
+        if (functions.size() <= 1) {
+            return;
+        }
+        String name = "f" + index;
+        for (int k = 0; k < functions.size(); k++) {
+            if (functions.get(k).getReferences().contains(name)) {
+                status = "Cannot delete " + name + ", f" + k + " uses it";
+                repaint();
+                return;
+            }
+        }
+        List < Function > remaining = new ArrayList < > (functions);
+        remaining.remove(index);
+        for (int k = index; k < remaining.size(); k++) {
+            Function function = remaining.get(k);
+            String renumbered = renumber(function.getExpression(), index);
+            if (!renumbered.equals(function.getExpression())) {
+                remaining.set(k, new Function(renumbered, function.getColor(), definitions.withPlotted(remaining)));
+            }
+        }
+        functions.clear();
+        functions.addAll(remaining);
+        if (areaTarget == index) {
+            areaTarget = AREA_OFF; // shaded against the deleted function
+        } else if (areaTarget > index) {
+            areaTarget--; // follow the function down a place
+        }
+        scopeVersion++;
+        status = null;
+        selectFunction(Math.max(0, index - 1));
+    }
+
+
+    // Rewrites the calls f(n) for n > removed as f(n - 1)
+    private static String renumber(String expression, int removed) {
+        Matcher matcher = PLOTTED_CALL.matcher(expression);
+        StringBuilder result = new StringBuilder();
+        while (matcher.find()) {
+            int n = Integer.parseInt(matcher.group(1));
+            matcher.appendReplacement(result, "f" + (n > removed ? n - 1 : n));
+        }
+        matcher.appendTail(result);
+        return result.toString();
+    }
+
+
+    /**
+     * Asks for a .png or .svg file and writes the current view to it at EXPORT_MAGNIFICATION times the
+     * window size, on the export worker.
+     */
+    private void exportScene() {
+        if (deepZoom) {
+            status = "Export is not available in deep zoom";
+            repaint();
+            return;
+        }
+        JFileChooser chooser = new JFileChooser();
+        chooser.setSelectedFile(new File("graph.png"));
+        if (chooser.showSaveDialog(this) != JFileChooser.APPROVE_OPTION) {
+            return;
+        }
+        File file = chooser.getSelectedFile();
+        SceneExporter exporter = exporter(getWidth() * EXPORT_MAGNIFICATION, getHeight() * EXPORT_MAGNIFICATION);
+        status = "Exporting " + file.getName() + "...";
+        repaint();
+        exportWorker.execute(() -> {
+            String outcome;
+            boolean failed = false;
+            try {
+                exporter.write(file);
+                outcome = "Exported " + file.getName();
+            } catch (IOException | RuntimeException ex) {
+                outcome = "Export failed: " + (ex.getMessage() == null ? ex.getClass().getSimpleName() : ex.getMessage());
+                failed = true;
+            }
+            String result = outcome;
+            boolean showDialog = failed;
+            SwingUtilities.invokeLater(() -> {
+                status = result;
+                repaint();
+                if (showDialog) {
+                    JOptionPane.showMessageDialog(this, result, "Export", JOptionPane.ERROR_MESSAGE);
+                }
+            });
+        });
+    }
+
+
+    /**
+     * Snapshots the current view, with the points of interest found for it, for export at the given
+     * size. The exported picture covers the visible x-range and is centered on the view.
+     */
+    SceneExporter exporter(int width, int height) {
+        PointsOfInterest poi = this.poi != null && this.poi.functions.equals(functions) ? this.poi : null;
+        double pixel = getWidth() / scale / width;
+        return new SceneExporter(functions, currentFunctionIndex, poi == null ? List.of() : poi.zeros, poi == null ? List.of() : poi.intersections,
+            xOffset.doubleValue() - width / 2.0 * pixel, -yOffset.doubleValue() + height / 2.0 * pixel, pixel, width, height, (double) width / getWidth());
+    }
+
+
+    /**
+     * Headless export: java TIUnNspired --export FILE WIDTH HEIGHT XMIN XMAX EXPRESSION...
+     * Plots the expressions over [XMIN, XMAX], centered on y = 0, with the zeros and intersections of
+     * the first one, and writes FILE (.png or .svg) without opening a window. Definitions among the
+     * expressions apply to the ones after them.
+     */
+    private static void export(String[] args) throws IOException {
+        File file = new File(args[1]);
+        int width = Integer.parseInt(args[2]);
+        int height = Integer.parseInt(args[3]);
+        double xMin = Double.parseDouble(args[4]);
+        double xMax = Double.parseDouble(args[5]);
+        List < Function > scene = new ArrayList < > ();
+        Definitions definitions = Definitions.NONE;
+        for (int i = 6; i < args.length; i++) {
+            if (Definitions.isDefinition(args[i])) {
+                definitions = definitions.define(args[i]);
+            } else {
+                scene.add(new Function(args[i], Color.BLACK, definitions.withPlotted(scene)));
+            }
+        }
+        double pixel = (xMax - xMin) / width;
+        PointsOfInterest poi = new PointsOfInterest(scene, 0, FusedKernel.compile(scene), 1 / pixel, DoubleDouble.valueOf((xMin + xMax) / 2), width, false, AREA_OFF,
+            new RootTracker());
+        poi.calculate();
+        // strokes and text are sized as on a window 800 pixels wide
+        new SceneExporter(scene, 0, poi.zeros, poi.intersections, xMin, height / 2.0 * pixel, pixel, width, height, width / 800.0).write(file);
+    }
+
+
+    /**
+     * The ghost of the input line being typed: its curve traced for one view, or why it is invalid.
+     */
+    static class Preview {
+        final String text;
+        final Function function; // null if the text is invalid
+        final Path2D.Double curve; // in screen coordinates of view
+        final double[] view; // scale, x offset, y offset, width and height the curve was traced for
+        final String error; // null if the text is valid
+        final int[] errorSpan; // {start, end} of the offending characters, null if unknown
+        final int scopeVersion; // of the names the text was compiled against
+
+
+        Preview(String text, Function function, Path2D.Double curve, double[] view, String error, int[] errorSpan, int scopeVersion) {
+            this.text = text;
+            this.function = function;
+            this.curve = curve;
+            this.view = view;
+            this.error = error;
+            this.errorSpan = errorSpan;
+            this.scopeVersion = scopeVersion;
+        }
+    }
+
+
+    /**
+     * Parses, compiles and traces the input line on the preview worker for the current view, cancelling
+     * the preview of the previous keystroke if it is still running; a trace stops as soon as it is
+     * cancelled, and a preview still waiting for the worker is dropped. The result is shown as a ghost
+     * curve, or as an error message, once it is ready; a function definition is previewed as its graph.
+     * Must be called on the event dispatch thread.
+     */
+    void preview(String text) {
+        if (previewTask != null) {
+            previewTask.cancel(true);
+        }
+        int generation = ++previewGeneration;
+        if (text.isBlank() || deepZoom) {
+            previewView = null;
+            publishPreview(null);
+            return;
+        }
+        double scale = this.scale, xOffset = this.xOffset.doubleValue(), yOffset = this.yOffset.doubleValue();
+        int width = getWidth(), height = getHeight();
+        double[] view = {
+            scale,
+            xOffset,
+            yOffset,
+            width,
+            height
+        };
+        previewView = view;
+        Definitions scope = scope();
+        int version = scopeVersion;
+        previewTask = previewWorker.submit(() -> {
+            Preview result;
+            try {
+                int half = width / 2;
+                if (Definitions.isDefinition(text)) {
+                    Definitions.Definition definition = scope.parse(text);
+                    if (Thread.currentThread().isInterrupted()) return; // the next keystroke has arrived
+                    Path2D.Double curve = definition.isFunction() ?
+                        explicitCurve(definition.program.evaluateGrid(-half / scale + xOffset, 1.0 / scale, 2 * half + 1)[0], width, height, scale, xOffset, yOffset) : null;
+                    result = new Preview(text, null, curve, view, null, null, version);
+                } else {
+                    Function function = new Function(text, Color.BLACK, scope);
+                    if (Thread.currentThread().isInterrupted()) return; // the next keystroke has arrived
+                    Path2D.Double curve = function.isExplicit() ?
+                        explicitCurve(function.program.evaluateGrid(-half / scale + xOffset, 1.0 / scale, 2 * half + 1)[0], width, height, scale, xOffset, yOffset) :
+                        function.trace(xOffset - half / scale, height / 2 / scale - yOffset, 1 / scale, width, height);
+                    result = new Preview(text, function, curve, view, null, null, version);
+                }
+            } catch (RuntimeException ex) {
+                String message = ex.getMessage() == null ? "Invalid expression" : ex.getMessage();
+                result = new Preview(text, null, null, view, message, Function.errorSpan(text, scope), version);
+            }
+            if (Thread.currentThread().isInterrupted()) return; // traced only in part, and superseded anyway
+            Preview published = result;
+            SwingUtilities.invokeLater(() -> {
+                if (generation == previewGeneration) {
+                    publishPreview(published);
+                }
+            });
+        });
+    }
+
+
+    private void publishPreview(Preview preview) {
+        this.preview = preview;
+        repaint();
+        if (previewListener != null) {
+            previewListener.accept(preview);
+        }
+    }
+
+
+    private static ExecutorService daemonExecutor(String name) {
+        return Executors.newSingleThreadExecutor(daemonThreads(name));
+    }
+
+
+    // A single worker that keeps at most one task waiting: submitting another drops the waiting one.
+    private static ExecutorService latestTaskExecutor(String name) {
+        return new ThreadPoolExecutor(1, 1, 0, TimeUnit.SECONDS, new ArrayBlockingQueue < > (1), daemonThreads(name),
+            new ThreadPoolExecutor.DiscardOldestPolicy());
+    }
+
+
+    private static ThreadFactory daemonThreads(String name) {
+        return r -> {
+            Thread thread = new Thread(r, name);
+            thread.setDaemon(true);
+            return thread;
+        };
+    }
+
+
+    // Arrow keys move half a unit in the standard view and a fixed number of pixels in deep zoom.
+    private double panStep() {
+        return deepZoom ? 50 / scale : 0.5;
+    }
+
+
     @Override
     public void paint(Graphics g) {
         width = getWidth();
         height = getHeight();
         g.clearRect(0, 0, width, height);
+        if (deepZoom) {
+            paintDeepZoom((Graphics2D) g);
+            return;
+        }
         g.setColor(Color.BLACK);
 
 
+        double xOffset = this.xOffset.doubleValue();
+        double yOffset = this.yOffset.doubleValue();
         int scaledXOffset = (int) Math.round(xOffset * scale);
         int scaledYOffset = (int) Math.round(yOffset * scale);
 
@@ -175,7 +613,7 @@ public class TIUnNspired extends Canvas {
         g.setColor(Color.GRAY);
         for (int x = -2 * width; x <= width * 4; x += tickSpacing) {
             int graphX = (x - width / 2);
-            double graphCoord = graphX / (double) scale;
+            double graphCoord = graphX / scale;
             g.drawLine(x - scaledXOffset, height / 2 - 5 - scaledYOffset, x - scaledXOffset, height / 2 + 5 - scaledYOffset);
             if (graphCoord != 0) {
                 g.drawString(String.format("%.1f", graphCoord), x - 15 - scaledXOffset, height / 2 + 20 - scaledYOffset);
@@ -183,7 +621,7 @@ public class TIUnNspired extends Canvas {
         }
         for (int y = -2 * height; y <= height * 4; y += tickSpacing) {
             int graphY = (height / 2 - y);
-            double graphCoord = graphY / (double) scale;
+            double graphCoord = graphY / scale;
             g.drawLine(width / 2 - 5 - scaledXOffset, y - scaledYOffset, width / 2 + 5 - scaledXOffset, y - scaledYOffset);
             if (graphCoord != 0) {
                 g.drawString(String.format("%.1f", graphCoord), width / 2 + 10 - scaledXOffset, y + 5 - scaledYOffset);
@@ -192,43 +630,101 @@ public class TIUnNspired extends Canvas {
 
 
         // graph the function
-        for (int k = 0; k < functions.size(); k++) {
-            Function func = functions.get(k);
-            g.setColor(graphColors[k]);
+        // one pass over the pixel columns evaluates every function at once, then each curve's
+        // geometry is built on a worker thread; only the finished paths are drawn here
+        int half = width / 2;
+        double[][] ys = kernel().evaluateGrid(-half / scale + xOffset, 1.0 / scale, 2 * half + 1);
+        // tracing a relation takes far longer than a repaint, so traces are kept until the view changes
+        double[] traceView = {
+            scale,
+            xOffset,
+            yOffset,
+            width,
+            height
+        };
+        if (!Arrays.equals(traceView, tracedView)) {
+            traced.clear();
+            tracedView = traceView;
+        }
+        traced.keySet().retainAll(functions);
+        Path2D.Double[] curves = IntStream.range(0, functions.size()).parallel().mapToObj(k -> functions.get(k).isExplicit() ?
+            explicitCurve(ys[k], width, height, scale, xOffset, yOffset) :
+            // relations and parametric/polar curves trace themselves in screen coordinates
+            traced.containsKey(functions.get(k)) ? traced.get(functions.get(k)) :
+            functions.get(k).trace(xOffset - half / scale, height / 2 / scale - yOffset, 1 / scale, width, height)).toArray(Path2D.Double[]::new);
+        for (int k = 0; k < curves.length; k++) {
+            if (!functions.get(k).isExplicit()) traced.put(functions.get(k), curves[k]);
+        }
+        for (int k = 0; k < curves.length; k++) {
+            g.setColor(graphColor(k));
             if (k == currentFunctionIndex) {
                 ((Graphics2D) g).setStroke(new BasicStroke(2));
             } else {
                 ((Graphics2D) g).setStroke(new BasicStroke(1));
             }
+            ((Graphics2D) g).draw(curves[k]);
+        }
 
 
-            for (double i = -width / 2; i < width / 2; i++) {
-                double x1 = (i / (double) scale) + xOffset;
-                double x2 = ((i + 1) / (double) scale) + xOffset;
-
-
-                // Evaluate the function at both points
-                double y1 = func.evaluate(x1) + yOffset;
-                double y2 = func.evaluate(x2) + yOffset;
-
-
-                // Check if both y1 and y2 are valid numbers (and the slope is valid)
-                if ((y1 < 100 && y1 > -100) && (y2 < 100 && y2 > -100) && (Math.abs((y2 - y1) / (x2 - x1)) < 500)) {
-                    double screenX1 = width / 2 + i;
-                    double screenX2 = width / 2 + i + 1;
-                    double screenY1 = height / 2 - (int)(y1 * scale);
-                    double screenY2 = height / 2 - (int)(y2 * scale);
-
-
-                    Shape l = new Line2D.Double(screenX1, screenY1, screenX2, screenY2);
-                    ((Graphics2D) g).draw(l);
+        // ghost of the expression being typed, traced again on the preview worker whenever the view changes
+        Preview preview = this.preview;
+        if (preview != null) {
+            double[] view = {
+                scale,
+                xOffset,
+                yOffset,
+                width,
+                height
+            };
+            if (preview.error == null && !Arrays.equals(view, previewView)) {
+                preview(preview.text);
+            } else if (preview.curve != null && Arrays.equals(view, preview.view)) {
+                g.setColor(Color.GRAY);
+                ((Graphics2D) g).setStroke(new BasicStroke(1, BasicStroke.CAP_BUTT, BasicStroke.JOIN_MITER, 10, new float[] {
+                    6,
+                    4
+                }, 0));
+                ((Graphics2D) g).draw(preview.curve);
+            }
+            if (preview.error != null) {
+                g.setColor(Color.RED);
+                g.drawString(preview.error, 10, height - 10);
+            }
+        }
+        if (status != null) {
+            g.setColor(Color.BLACK);
+            g.drawString(status, 10, height - 25);
+        }
+        drawDefinitions(g);
+
+
+        // shade the area between the current function and its area target, if it was measured in this scene
+        PointsOfInterest poi = this.poi;
+        if (poi != null && poi.area != null && poi.functions.equals(functions)) {
+            Integrator.Result area = poi.area;
+            int currentFunctionIndex = poi.currentFunctionIndex, areaTarget = poi.areaTarget;
+            Color color = graphColor(currentFunctionIndex);
+            g.setColor(new Color(color.getRed(), color.getGreen(), color.getBlue(), 60));
+            ((Graphics2D) g).setStroke(new BasicStroke(1));
+            for (int i = 0; i <= 2 * half; i++) {
+                double y1 = ys[currentFunctionIndex][i] + yOffset;
+                double y2 = (areaTarget == AREA_AXIS ? 0 : ys[areaTarget][i]) + yOffset;
+                if (y1 < 100 && y1 > -100 && y2 < 100 && y2 > -100) {
+                    int screenX = width / 2 + (i - half);
+                    g.drawLine(screenX, height / 2 - (int)(y1 * scale), screenX, height / 2 - (int)(y2 * scale));
                 }
             }
+            g.setColor(Color.BLACK);
+            String integrand = "f" + currentFunctionIndex + "(x)" + (areaTarget == AREA_AXIS ? "" : " - f" + areaTarget + "(x)");
+            g.drawString("\u222B " + integrand + " dx = " + new DecimalFormat("#.######").format(area.value) + ", area = " +
+                new DecimalFormat("#.######").format(area.area()) + (area.converged ? "" : " (not converged)"), 10, 25);
         }
 
 
         // draw zeros
-        g.setColor(graphColors[currentFunctionIndex]);
+        List < Point > zeros = poi == null ? List.of() : poi.zeros;
+        List < Point > intersections = poi == null ? List.of() : poi.intersections;
+        g.setColor(graphColor(currentFunctionIndex));
         for (Point zero: zeros) {
             int screenX = width / 2 + (int)(zero.x * scale);
             int screenY = height / 2 - (int)(zero.y * scale);
@@ -259,12 +755,168 @@ public class TIUnNspired extends Canvas {
     }
 
 
-    public class Point {
+    /**
+     * @return whether an explicit curve is drawn straight from (x1, y1) to (x2, y2): a slope of 500 or
+     * more, or an undefined one, is taken for a pole or a jump and leaves a gap.
+     */
+    static boolean connects(double x1, double y1, double x2, double y2) {
+        return Math.abs((y2 - y1) / (x2 - x1)) < 500;
+    }
+
+
+    /**
+     * Builds the polyline of an explicit function from its samples at every pixel column, broken
+     * wherever the function leaves the plotted range or jumps too steeply (poles).
+     */
+    private static Path2D.Double explicitCurve(double[] y, int width, int height, double scale, double xOffset, double yOffset) {
+        int half = width / 2;
+        Path2D.Double path = new Path2D.Double();
+        boolean drawing = false;
+        for (int i = 0; i < 2 * half; i++) {
+            double x1 = ((i - half) / scale) + xOffset;
+            double x2 = ((i - half + 1) / scale) + xOffset;
+
+
+            double y1 = y[i] + yOffset;
+            double y2 = y[i + 1] + yOffset;
+
+
+            // Check if both y1 and y2 are valid numbers (and the slope is valid)
+            if ((y1 < 100 && y1 > -100) && (y2 < 100 && y2 > -100) && connects(x1, y1, x2, y2)) {
+                double screenX1 = width / 2 + (i - half);
+                double screenY1 = height / 2 - (int)(y1 * scale);
+                double screenY2 = height / 2 - (int)(y2 * scale);
+                if (!drawing) {
+                    path.moveTo(screenX1, screenY1);
+                    drawing = true;
+                }
+                path.lineTo(screenX1 + 1, screenY2);
+            } else {
+                drawing = false;
+            }
+        }
+        return path;
+    }
+
+
+    /**
+     * Deep-zoom counterpart of the axes, curves and points drawn by paint. Every graph coordinate is
+     * a double-double; values are only converted to double once they are pixel offsets.
+     */
+    private void paintDeepZoom(Graphics2D g) {
+        int tickSpacing = 50;
+        double axisX = width / 2.0 - xOffset.doubleValue() * scale; // screen column of x = 0
+        double axisY = height / 2.0 - yOffset.doubleValue() * scale; // screen row of y = 0
+        int tickRow = (int) Math.max(0, Math.min(height - 25, axisY)); // keep tick labels on screen
+        int tickColumn = (int) Math.max(0, Math.min(width - 100, axisX));
+
+
+        g.setColor(Color.BLACK);
+        if (axisX >= 0 && axisX <= width) g.drawLine((int) axisX, 0, (int) axisX, height); // y-axis
+        if (axisY >= 0 && axisY <= height) g.drawLine(0, (int) axisY, width, (int) axisY); // x-axis
+        g.setColor(Color.GRAY);
+        int labelEnd = Integer.MIN_VALUE;
+        for (int x = width / 2 % tickSpacing; x <= width; x += tickSpacing) {
+            DoubleDouble graphCoord = xOffset.add((x - width / 2) / scale);
+            g.drawLine(x, tickRow - 5, x, tickRow + 5);
+            String label = graphCoord.toString(labelDigits(graphCoord, tickSpacing));
+            if (x - 15 > labelEnd) { // long deep-zoom labels would overlap, so skip the ones that collide
+                g.drawString(label, x - 15, tickRow + 20);
+                labelEnd = x - 15 + g.getFontMetrics().stringWidth(label) + 10;
+            }
+        }
+        for (int y = height / 2 % tickSpacing; y <= height; y += tickSpacing) {
+            DoubleDouble graphCoord = yOffset.negate().add((height / 2 - y) / scale);
+            g.drawLine(tickColumn - 5, y, tickColumn + 5, y);
+            g.drawString(graphCoord.toString(labelDigits(graphCoord, tickSpacing)), tickColumn + 10, y + 5);
+        }
+
+
+        // graph the functions on a double-double grid, one pixel column per sample
+        int half = width / 2;
+        DoubleDouble[] xs = new DoubleDouble[2 * half + 1];
+        for (int i = 0; i < xs.length; i++) {
+            xs[i] = xOffset.add((i - half) / scale);
+        }
+        DoubleDouble[][] ys = kernel().evaluate(xs);
+        Path2D.Double[] curves = IntStream.range(0, functions.size()).parallel().mapToObj(k -> {
+            Path2D.Double path = new Path2D.Double();
+            double previous = Double.NaN;
+            for (int i = 0; i < xs.length; i++) {
+                double screenY = height / 2.0 - ys[k][i].add(yOffset).multiply(scale).doubleValue();
+                // skip non-finite samples and segments that jump far off screen (poles)
+                if (i > 0 && Math.abs(previous - height / 2.0) < 2 * height && Math.abs(screenY - height / 2.0) < 2 * height) {
+                    if (path.getCurrentPoint() == null || path.getCurrentPoint().getX() != i - 1) {
+                        path.moveTo(i - 1, previous);
+                    }
+                    path.lineTo(i, screenY);
+                }
+                previous = screenY;
+            }
+            return path;
+        }).toArray(Path2D.Double[]::new);
+        for (int k = 0; k < curves.length; k++) {
+            g.setColor(graphColor(k));
+            g.setStroke(new BasicStroke(k == currentFunctionIndex ? 2 : 1));
+            g.draw(curves[k]);
+        }
+
+
+        // draw zeros and intersections
+        List < Point > zeros = poi == null ? List.of() : poi.zeros;
+        List < Point > intersections = poi == null ? List.of() : poi.intersections;
+        g.setColor(graphColor(currentFunctionIndex));
+        int dotSize = 6;
+        for (Point zero: zeros) {
+            int screenX = (int) Math.round(width / 2.0 + zero.preciseX.subtract(xOffset).multiply(scale).doubleValue());
+            int screenY = (int) Math.round(height / 2.0 - zero.preciseY.add(yOffset).multiply(scale).doubleValue());
+            g.fillOval(screenX - dotSize / 2, screenY - dotSize / 2, dotSize, dotSize);
+            g.drawString(zero.toString(labelDigits(zero.preciseX, 1)), screenX + dotSize, screenY - dotSize);
+        }
+        for (Point intersection: intersections) {
+            int screenX = (int) Math.round(width / 2.0 + intersection.preciseX.subtract(xOffset).multiply(scale).doubleValue());
+            int screenY = (int) Math.round(height / 2.0 - intersection.preciseY.add(yOffset).multiply(scale).doubleValue());
+            g.fillRect(screenX - dotSize / 2, screenY - dotSize / 2, dotSize, dotSize);
+            g.drawString(intersection.toString(labelDigits(intersection.preciseX, 1)), screenX + dotSize, screenY - dotSize);
+        }
+
+
+        // function label
+        g.setColor(Color.BLACK);
+        if (currentFunctionIndex < functions.size()) {
+            g.drawString("f" + currentFunctionIndex + "(x): " + functions.get(currentFunctionIndex).getExpression(), 10, 10);
+        }
+        g.drawString("deep zoom: " + DoubleDouble.valueOf(scale).toString(3) + " px/unit", 10, 25);
+    }
+
+
+    // Significant digits needed to tell apart values that are the given number of pixels apart.
+    private int labelDigits(DoubleDouble value, int pixels) {
+        double resolution = pixels / scale;
+        double magnitude = Math.max(Math.abs(value.doubleValue()), resolution);
+        return (int) Math.max(3, Math.min(32, Math.ceil(Math.log10(magnitude / resolution)) + 2));
+    }
+
+
+    public static class Point {
         public double x;
         public double y;
+        public DoubleDouble preciseX; // full coordinates for deep zoom
+        public DoubleDouble preciseY;
         public Point(double x, double y) {
             this.x = x;
             this.y = y;
+            this.preciseX = DoubleDouble.valueOf(x);
+            this.preciseY = DoubleDouble.valueOf(y);
+        }
+        public Point(DoubleDouble x, DoubleDouble y) {
+            this.x = x.doubleValue();
+            this.y = y.doubleValue();
+            this.preciseX = x;
+            this.preciseY = y;
+        }
+        public String toString(int significantDigits) {
+            return ("(" + preciseX.toString(significantDigits) + "," + preciseY.toString(significantDigits) + ")");
         }
         @Override
         public String toString() {
@@ -273,95 +925,322 @@ public class TIUnNspired extends Canvas {
     }
 
 
+    // Lists the definitions in the top right corner.
+    private void drawDefinitions(Graphics g) {
+        g.setColor(Color.DARK_GRAY);
+        FontMetrics metrics = g.getFontMetrics();
+        int y = 15;
+        for (Definitions.Definition definition: definitions.all()) {
+            g.drawString(definition.text, width - 10 - metrics.stringWidth(definition.text), y);
+            y += 15;
+        }
+    }
+
+
+    /**
+     * Returns the fused kernel for the current function list, recompiling it only when the
+     * list has changed since the last frame.
+     */
+    private FusedKernel kernel() {
+        if (kernel == null || !kernelFunctions.equals(functions)) {
+            kernel = FusedKernel.compile(functions);
+            kernelFunctions = new ArrayList < > (functions);
+            if (valueTable != null) {
+                valueTable.setFunctions(kernelFunctions, kernel);
+            }
+            if (functionListModel != null) {
+                functionListModel.changed();
+            }
+        }
+        return kernel;
+    }
+
+
+    /**
+     * Starts a new search for the points of interest of the current view on the worker, dropping any
+     * search still running for an older view. The results replace poi, and the canvas is repainted,
+     * on the event dispatch thread once the search is done.
+     */
     private void calculatePOI() {
-        calculateZeros();
-        calculateIntersections();
+        PointsOfInterest search = new PointsOfInterest(functions, currentFunctionIndex, kernel(), scale, xOffset, getWidth(), deepZoom, areaTarget, rootTracker);
+        if (poiTask != null) {
+            poiTask.cancel(true);
+        }
+        int generation = ++poiGeneration;
+        poiTask = poiWorker.submit(() -> {
+            try {
+                search.calculate();
+            } catch (RuntimeException ex) {
+                String message = "Points of interest failed: " + (ex.getMessage() == null ? ex.getClass().getSimpleName() : ex.getMessage());
+                SwingUtilities.invokeLater(() -> {
+                    if (generation == poiGeneration) {
+                        status = message;
+                        repaint();
+                    }
+                });
+                return;
+            }
+            if (Thread.currentThread().isInterrupted()) return; // superseded while running
+            SwingUtilities.invokeLater(() -> {
+                if (generation == poiGeneration) {
+                    poi = search;
+                    repaint();
+                }
+            });
+        });
     }
 
 
-    private void calculateZeros() {
-        zeros.clear();
-        int width = getWidth();
-        DecimalFormat formatter = new DecimalFormat("#.###");
-        RootFinder rootFinder = new RootFinder(1e-15, 1e-17, 1e-17);
-        double minX = -width / 2.0 / scale;
-        double maxX = width / 2.0 / scale;
+    /**
+     * One search for the zeros and intersections of the current function, and its area, over the
+     * visible range. It works on a snapshot of the scene taken on the event thread, so it can run on a
+     * worker while the view keeps changing.
+     */
+    private static class PointsOfInterest {
+        private final List < Function > functions;
+        private final int currentFunctionIndex;
+        private final FusedKernel kernel;
+        private final double scale;
+        private final DoubleDouble xOffset;
+        private final int width;
+        private final boolean deepZoom;
+        private final int areaTarget;
+        private final RootTracker tracker; // only used by one search at a time
+
+
+        private final ArrayList < Point > zeros = new ArrayList < > (); // to store zeros of the function
+        private final ArrayList < Point > intersections = new ArrayList < > (); // to store intersections between functions
+        private final Map < Integer, List < Double > > poiRoots = new HashMap < > (); // unrounded roots against each partner, AREA_AXIS for zeros
+        private Integrator.Result area; // integral over the visible range, null when off
+
+
+        PointsOfInterest(List < Function > functions, int currentFunctionIndex, FusedKernel kernel, double scale, DoubleDouble xOffset, int width,
+            boolean deepZoom, int areaTarget, RootTracker tracker) {
+            this.functions = new ArrayList < > (functions);
+            this.currentFunctionIndex = currentFunctionIndex;
+            this.kernel = kernel;
+            this.scale = scale;
+            this.xOffset = xOffset;
+            this.width = width;
+            this.deepZoom = deepZoom;
+            this.areaTarget = areaTarget;
+            this.tracker = tracker;
+        }
+
+
+        void calculate() {
+            if (currentFunctionIndex >= functions.size()) {
+                return;
+            }
+            if (deepZoom) {
+                calculateDeepPOI();
+                return;
+            }
+            // The tracker keeps the roots found for earlier views and samples every function once, on a
+            // shared grid, over the part of the view it has not searched yet.
+            double minX = -width / 2.0 / scale + xOffset.doubleValue();
+            double maxX = width / 2.0 / scale + xOffset.doubleValue();
+            Map < Integer, List < Double > > roots = tracker.update(functions, currentFunctionIndex, kernel, minX, maxX, POI_SAMPLES);
+
+
+            calculateZeros(roots.getOrDefault(RootTracker.AXIS, List.of()));
+            calculateIntersections(roots);
+            calculateArea(minX, maxX);
+        }
 
 
-        DoubleUnaryOperator func = x - > functions.get(currentFunctionIndex).evaluate(x);
+        /**
+         * Integrates the current function, or its difference with the area target, over the visible range.
+         * The limits are split at the zeros or intersections just found, so each piece has one sign and
+         * the enclosed area is the sum of the pieces' absolute values.
+         */
+        private void calculateArea(double minX, double maxX) {
+            if (areaTarget == AREA_OFF || areaTarget >= functions.size() || areaTarget == currentFunctionIndex ||
+                !functions.get(currentFunctionIndex).isExplicit() || (areaTarget >= 0 && !functions.get(areaTarget).isExplicit())) {
+                return;
+            }
+            FusedKernel integrand = FusedKernel.compile(areaTarget == AREA_AXIS ? List.of(functions.get(currentFunctionIndex)) :
+                List.of(functions.get(currentFunctionIndex), functions.get(areaTarget)));
+            double[] limits = Integrator.breakpoints(minX, maxX, poiRoots.getOrDefault(areaTarget, List.of()));
 
 
-        ArrayList < Double > roots = (ArrayList < Double > ) rootFinder.findAllRoots(func, minX, maxX, 1000);
+            area = new Integrator(1e-8, 1e-10, 200000).integrate(xs -> {
+                double[][] values = integrand.evaluate(xs);
+                if (values.length > 1) {
+                    for (int i = 0; i < xs.length; i++) {
+                        values[0][i] -= values[1][i];
+                    }
+                }
+                return values[0];
+            }, limits);
+        }
 
 
-        for (double root: roots) {
-            double test = functions.get(currentFunctionIndex).evaluate(root);
-            if (test < 10000 && test > -10000) {
-                root = Double.parseDouble(formatter.format(root));
-                zeros.add(new Point(root, 0));
+        /**
+         * Deep-zoom counterpart of calculate: the shared grid, the sampled values, the Brent brackets
+         * and the tolerances are all double-double, and the roots are kept unrounded.
+         */
+        private void calculateDeepPOI() {
+            zeros.clear();
+            intersections.clear();
+            double span = width / scale;
+            DoubleDouble[] xs = new DoubleDouble[POI_SAMPLES];
+            for (int i = 0; i < POI_SAMPLES; i++) {
+                xs[i] = xOffset.add(-span / 2 + span * i / (POI_SAMPLES - 1));
+            }
+            DoubleDouble[][] ys = kernel.evaluate(xs);
+
+
+            RootFinder rootFinder = new RootFinder(1e-30, 1e-40, 1e-40);
+            Function current = functions.get(currentFunctionIndex);
+            for (DoubleDouble root: rootFinder.findAllRoots(current::evaluate, xs, ys[currentFunctionIndex])) {
+                if (Math.abs(current.evaluate(root).doubleValue()) < 10000) {
+                    zeros.add(new Point(root, DoubleDouble.ZERO));
+                }
+            }
+
+
+            DoubleDouble[] diff = new DoubleDouble[POI_SAMPLES];
+            for (int i = 0; i < functions.size(); i++) {
+                if (i == currentFunctionIndex) continue;
+                if (Thread.currentThread().isInterrupted()) return; // superseded by a newer search
+                Function other = functions.get(i);
+                for (int j = 0; j < POI_SAMPLES; j++) {
+                    diff[j] = ys[currentFunctionIndex][j].subtract(ys[i][j]);
+                }
+                for (DoubleDouble root: rootFinder.findAllRoots(x -> current.evaluate(x).subtract(other.evaluate(x)), xs, diff)) {
+                    DoubleDouble y = current.evaluate(root);
+                    if (Math.abs(y.doubleValue()) < 10000 && Math.abs(other.evaluate(root).doubleValue()) < 10000) {
+                        intersections.add(new Point(root, y));
+                    }
+                }
             }
         }
-    }
 
 
-    private void calculateIntersections() {
-        intersections.clear();
-        int width = getWidth();
-        ArrayList < Double > storedXValues = new ArrayList < > ();
+        private void calculateZeros(List < Double > roots) {
+            zeros.clear();
+            DecimalFormat formatter = new DecimalFormat("#.###");
+            poiRoots.put(AREA_AXIS, roots);
 
 
-        RootFinder rootFinder = new RootFinder(1e-15, 1e-15, 1e-17);
-        double minX = -width / 2.0 / scale;
-        double maxX = width / 2.0 / scale;
+            for (double root: roots) {
+                double test = functions.get(currentFunctionIndex).evaluate(root);
+                if (test < 10000 && test > -10000) {
+                    root = Double.parseDouble(formatter.format(root));
+                    zeros.add(new Point(root, 0));
+                }
+            }
+        }
 
 
-        for (int i = 0; i < functions.size(); i++) {
-            if (i == currentFunctionIndex) continue;
-            final int functionIndex = i;
-            DoubleUnaryOperator diffFunc = x - > functions.get(currentFunctionIndex).evaluate(x) - functions.get(functionIndex).evaluate(x);
+        private void calculateIntersections(Map < Integer, List < Double > > roots) {
+            intersections.clear();
+            ArrayList < Double > storedXValues = new ArrayList < > ();
 
 
-            ArrayList < Double > intersectionsFound = (ArrayList < Double > ) rootFinder.findAllRoots(diffFunc, minX, maxX, 1000);
+            for (int i = 0; i < functions.size(); i++) {
+                if (i == currentFunctionIndex || !roots.containsKey(i)) continue;
+                final int functionIndex = i;
+                List < Double > intersectionsFound = roots.get(functionIndex);
+                poiRoots.put(functionIndex, intersectionsFound);
 
 
-            for (double intersectionX: intersectionsFound) {
-                double intersectionY = functions.get(currentFunctionIndex).evaluate(intersectionX);
+                for (double intersectionX: intersectionsFound) {
+                    double intersectionY = functions.get(currentFunctionIndex).evaluate(intersectionX);
 
 
-                intersectionX = Math.round(intersectionX * 100000.0) / 100000.0;
-                intersectionY = Math.round(intersectionY * 100000.0) / 100000.0;
+                    intersectionX = Math.round(intersectionX * 100000.0) / 100000.0;
+                    intersectionY = Math.round(intersectionY * 100000.0) / 100000.0;
 
 
-                double test = functions.get(currentFunctionIndex).evaluate(intersectionX);
-                double test2 = functions.get(functionIndex).evaluate(intersectionX);
+                    double test = functions.get(currentFunctionIndex).evaluate(intersectionX);
+                    double test2 = functions.get(functionIndex).evaluate(intersectionX);
 
 
-                if (test < 10000 && test > -10000 && test2 < 10000 && test2 > -10000) {
-                    intersections.add(new Point(intersectionX, intersectionY));
-                    storedXValues.add(intersectionX);
-                }
+                    if (test < 10000 && test > -10000 && test2 < 10000 && test2 > -10000) {
+                        intersections.add(new Point(intersectionX, intersectionY));
+                        storedXValues.add(intersectionX);
+                    }
 
 
+                }
             }
-        }
 
 
+        }
     }
 
 
     public static class Function {
+        /**
+         * The forms an input line can take.
+         */
+        public enum Kind {
+            EXPLICIT, // f(x) or y = f(x)
+            IMPLICIT, // a relation such as x^2+y^2=1
+            PARAMETRIC, // (x(t), y(t)) for t in [0, 2p]
+            POLAR // r = f(t) for t in [0, 2p]
+        }
+
+
+        private static final double T_MIN = 0, T_MAX = 2 * Math.PI; // parameter range of parametric and polar curves
+
+
         private final DoubleUnaryOperator
 
         function;
         private final String expression;
+        private final Kind kind;
+        private final FusedKernel program; // compiled form: f(x), F(x, y), (x(t), y(t)) or r(t)
         private final Color color;
 
 
         // Constructor for initializing with an expression and color
         public Function(String expression, Color color) {
+            this(expression, color, Definitions.NONE);
+        }
+
+
+        /**
+         * Compiles an input line that may call definitions and the plotted functions of scope.
+         *
+         * @throws IllegalArgumentException if the line is invalid or uses an unknown name.
+         */
+        public Function(String expression, Color color, Definitions scope) {
             this.expression = expression;
-            this.function = eval.parseExpression(expression); // Use eval to parse the expression
             this.color = color;
+
+
+            String text = expression.replaceAll("\\s", "");
+            if (text.startsWith("(") && text.endsWith(")") && topLevelComma(text.substring(1, text.length() - 1)) >= 0) {
+                text = text.substring(1, text.length() - 1);
+            }
+            int comma = topLevelComma(text);
+            int equals = text.indexOf('=');
+            if (comma >= 0) {
+                kind = Kind.PARAMETRIC;
+                program = FusedKernel.compilePrograms(List.of(postfixOf(text.substring(0, comma)), postfixOf(text.substring(comma + 1))), scope, "t");
+            } else if (text.startsWith("r=")) {
+                kind = Kind.POLAR;
+                program = FusedKernel.compilePrograms(List.of(postfixOf(text.substring(2))), scope, "t");
+            } else if (equals >= 0 && !(text.startsWith("y=") && !eval.tokenize(text.substring(2)).contains("y"))) {
+                // lhs = rhs becomes lhs + -(rhs) = 0; eval's '-' is unary
+                kind = Kind.IMPLICIT;
+                List < String > relation = new ArrayList < > (postfixOf(text.substring(0, equals)));
+                relation.addAll(postfixOf(text.substring(equals + 1)));
+                relation.add("-");
+                relation.add("+");
+                program = FusedKernel.compilePrograms(List.of(relation), scope, "x", "y");
+            } else {
+                kind = Kind.EXPLICIT;
+                if (text.startsWith("y=")) text = text.substring(2);
+                FusedKernel compiled = FusedKernel.compilePrograms(List.of(postfixOf(text)), scope, "x"); // rejects malformed expressions before they reach the scene
+                program = compiled;
+                function = x -> compiled.valueAt(x);
+                return;
+            }
+            function = x -> Double.NaN; // not a function of x
         }
 
 
@@ -371,18 +1250,187 @@ public class TIUnNspired extends Canvas {
         }
 
 
+        /**
+         * Finds the part of an input line that makes it invalid, splitting it into its forms exactly as
+         * the constructor does.
+         *
+         * @return {start, end} of the offending characters in expression, or null if none was found
+         */
+        public static int[] errorSpan(String expression, Definitions scope) {
+            // positions in the text without whitespace map back through raw
+            StringBuilder stripped = new StringBuilder();
+            int[] raw = new int[expression.length() + 1];
+            for (int i = 0; i < expression.length(); i++) {
+                if (!Character.isWhitespace(expression.charAt(i))) {
+                    raw[stripped.length()] = i;
+                    stripped.append(expression.charAt(i));
+                }
+            }
+            raw[stripped.length()] = expression.length();
+            String text = stripped.toString();
+
+
+            int from = 0, to = text.length();
+            if (text.startsWith("(") && text.endsWith(")") && topLevelComma(text.substring(1, text.length() - 1)) >= 0) {
+                from++;
+                to--;
+            }
+            int comma = topLevelComma(text.substring(from, to));
+            int equals = text.indexOf('=');
+            int[] span;
+            Predicate < String > names = scope::defines;
+            if (Definitions.isDefinition(text)) {
+                // definitions see each other, not the plotted functions
+                Definitions definitions = scope.withPlotted(List.of());
+                int open = text.indexOf('(');
+                span = open >= 0 && open < equals ? errorSpan(text, equals + 1, to, definitions::defines, text.substring(open + 1, equals - 1)) :
+                    errorSpan(text, equals + 1, to, definitions::defines, "x", "y", "t");
+            } else if (comma >= 0) {
+                span = errorSpan(text, from, from + comma, names, "t");
+                if (span == null) span = errorSpan(text, from + comma + 1, to, names, "t");
+            } else if (text.startsWith("r=")) {
+                span = errorSpan(text, 2, to, names, "t");
+            } else if (equals >= 0 && !(text.startsWith("y=") && !eval.tokenize(text.substring(2)).contains("y"))) {
+                span = errorSpan(text, 0, equals, names, "x", "y");
+                if (span == null) span = errorSpan(text, equals + 1, to, names, "x", "y");
+            } else {
+                span = errorSpan(text, text.startsWith("y=") ? 2 : 0, to, names, "x");
+            }
+            return span == null ? null : new int[] {
+                raw[span[0]], span[1] > span[0] ? raw[span[1] - 1] + 1 : raw[span[0]]
+            };
+        }
+
+
+        // errorSpan of text[from, to) over the given variables, in positions of text
+        private static int[] errorSpan(String text, int from, int to, Predicate < String > names, String...variables) {
+            try {
+                int[] span = eval.errorSpan(text.substring(from, to), names, variables);
+                return span == null ? null : new int[] {
+                    from + span[0], from + span[1]
+                };
+            } catch (RuntimeException ex) {
+                return new int[] {
+                    from, to
+                };
+            }
+        }
+
+
+        private static List < String > postfixOf(String expression) {
+            return eval.toPostfix(eval.tokenize(expression), null, true);
+        }
+
+
+        // Index of the first comma outside parentheses, or -1
+        private static int topLevelComma(String text) {
+            int depth = 0;
+            for (int i = 0; i < text.length(); i++) {
+                char c = text.charAt(i);
+                if (c == '(') depth++;
+                else if (c == ')') depth--;
+                else if (c == ',' && depth == 0) return i;
+            }
+            return -1;
+        }
+
+
         // Evaluates the function for a given x value
         public double evaluate(double x) {
             return function.applyAsDouble(x);
         }
 
 
+        // Evaluates the function in double-double arithmetic (deep zoom)
+        public DoubleDouble evaluate(DoubleDouble x) {
+            if (kind != Kind.EXPLICIT) {
+                return DoubleDouble.NaN;
+            }
+            return program.evaluate(new DoubleDouble[] {
+                x
+            })[0][0];
+        }
+
+
+        /**
+         * Traces an implicit, parametric or polar curve over the visible window.
+         *
+         * @param xMin  graph x of the left pixel column
+         * @param yMax  graph y of the top pixel row
+         * @param pixel graph units per pixel
+         * @return the curve in screen coordinates, or null for explicit functions (drawn from the shared kernel)
+         */
+        public Path2D.Double trace(double xMin, double yMax, double pixel, int width, int height) {
+            return switch (kind) {
+                case IMPLICIT -> ImplicitPlotter.plot(program, xMin, yMax, pixel, width, height);
+                case PARAMETRIC, POLAR -> CurveSampler.sample(curve(), T_MIN, T_MAX, xMin, yMax, pixel, width, height);
+                default -> null;
+            };
+        }
+
+
+        /**
+         * Traces an implicit, parametric or polar curve as above, handing it to out piece by piece as
+         * it is traced; relations are traced one band of rows at a time. Explicit functions emit nothing.
+         */
+        public void trace(double xMin, double yMax, double pixel, int width, int height, PathSink out) {
+            switch (kind) {
+                case IMPLICIT -> ImplicitPlotter.plot(program, xMin, yMax, pixel, width, height, out);
+                case PARAMETRIC, POLAR -> CurveSampler.sample(curve(), T_MIN, T_MAX, xMin, yMax, pixel, width, height, out);
+                default -> {}
+            }
+        }
+
+
+        // The point of a parametric or polar curve at each t.
+        private CurveSampler.Curve curve() {
+            if (kind == Kind.PARAMETRIC) {
+                return ts -> program.evaluate(ts);
+            }
+            return ts -> {
+                double[] r = program.evaluate(ts)[0];
+                double[] xs = new double[ts.length];
+                double[] ys = new double[ts.length];
+                for (int i = 0; i < ts.length; i++) {
+                    xs[i] = r[i] * Math.cos(ts[i]);
+                    ys[i] = r[i] * Math.sin(ts[i]);
+                }
+                return new double[][] {
+                    xs,
+                    ys
+                };
+            };
+        }
+
+
+        public Kind getKind() {
+            return kind;
+        }
+
+
+        public boolean isExplicit() {
+            return kind == Kind.EXPLICIT;
+        }
+
+
         // Returns the mathematical expression as a string
         public String getExpression() {
             return expression;
         }
 
 
+        // Returns the compiled form; for explicit functions, the kernel the scene's kernel imports
+        FusedKernel getProgram() {
+            return program;
+        }
+
+
+        // Returns the names of the definitions and plotted functions this one was built from
+        public Set < String > getReferences() {
+            return program.references();
+        }
+
+
         // Returns the color associated with the function
         public Color getColor() {
             return color;
@@ -390,7 +1438,61 @@ public class TIUnNspired extends Canvas {
     }
 
 
-    public static void main(String[] args) {
+    /**
+     * The function list as the JList beside the graph last saw it. Each change is reported as the
+     * interval added or removed where the list first differs, plus the entries replaced after it, so
+     * the JList keeps its selection and size in step.
+     */
+    static class FunctionListModel extends AbstractListModel < Function > {
+        private static final long serialVersionUID = 1L;
+        private List < Function > shown = List.of();
+
+
+        @Override
+        public int getSize() {
+            return shown.size();
+        }
+
+
+        @Override
+        public Function getElementAt(int index) {
+            return shown.get(index);
+        }
+
+
+        // The functions were added, removed or replaced.
+        void changed() {
+            List < Function > previous = shown;
+            shown = new ArrayList < > (functions);
+            int first = 0;
+            while (first < previous.size() && first < shown.size() && previous.get(first) == shown.get(first)) {
+                first++;
+            }
+            int last = 0; // entries equal at the end of both lists
+            while (last < previous.size() - first && last < shown.size() - first &&
+                previous.get(previous.size() - 1 - last) == shown.get(shown.size() - 1 - last)) {
+                last++;
+            }
+            int difference = shown.size() - previous.size();
+            if (difference < 0) {
+                fireIntervalRemoved(this, first, first - difference - 1);
+            } else if (difference > 0) {
+                fireIntervalAdded(this, first, first + difference - 1);
+            }
+            int replaced = shown.size() - last - first - Math.max(difference, 0); // after the added interval
+            if (replaced > 0) {
+                int from = first + Math.max(difference, 0);
+                fireContentsChanged(this, from, from + replaced - 1);
+            }
+        }
+    }
+
+
+    public static void main(String[] args) throws IOException {
+        if (args.length > 0 && args[0].equals("--export")) {
+            export(args);
+            return;
+        }
         functions = new ArrayList < > ();
         JFrame frame = new JFrame("TI Un-Nspired");
         frame.setSize(width, height);
@@ -399,36 +1501,123 @@ public class TIUnNspired extends Canvas {
         TIUnNspired graphingCanvas = new TIUnNspired(functions);
 
 
-        inputField.addActionListener(e - > {
+        inputField.addActionListener(e -> {
             String input = inputField.getText();
             try {
-                String expression = input;
-                Function
-
-                function = new Function(expression);
+                graphingCanvas.submit(input);
+            } catch (Exception ex) {
+                Toolkit.getDefaultToolkit().beep(); // the preview marks what is wrong
+                graphingCanvas.preview(input);
+            }
+        });
 
 
-                functions.add(function);
+        // live preview: every edit re-parses the line in the background, errors are marked in place
+        inputField.getDocument().addDocumentListener(new DocumentListener() {
+            @Override
+            public void insertUpdate(DocumentEvent e) {
+                graphingCanvas.preview(inputField.getText());
+            }
 
 
-                if (addedAFunction) graphingCanvas.currentFunctionIndex++;
-                addedAFunction = true;
+            @Override
+            public void removeUpdate(DocumentEvent e) {
+                graphingCanvas.preview(inputField.getText());
+            }
 
 
-                graphingCanvas.calculatePOI();
-                graphingCanvas.repaint();
-            } catch (Exception ex) {
-                ex.printStackTrace();
-                JOptionPane.showMessageDialog(frame, "Invalid input. Please use a valid mathematical expression.");
+            @Override
+            public void changedUpdate(DocumentEvent e) {
+                graphingCanvas.preview(inputField.getText());
             }
         });
+        Highlighter.HighlightPainter errorPainter = new DefaultHighlighter.DefaultHighlightPainter(new Color(255, 160, 160));
+        graphingCanvas.previewListener = preview -> {
+            inputField.getHighlighter().removeAllHighlights();
+            inputField.setToolTipText(null);
+            String text = inputField.getText();
+            if (preview == null || preview.error == null || !preview.text.equals(text) || text.isEmpty()) {
+                return;
+            }
+            int[] span = preview.errorSpan == null ? new int[] {
+                text.length() - 1, text.length()
+            } : preview.errorSpan;
+            int start = Math.max(0, Math.min(span[0], text.length() - 1));
+            int end = Math.min(text.length(), Math.max(span[1], start + 1));
+            try {
+                inputField.getHighlighter().addHighlight(start, end, errorPainter);
+            } catch (BadLocationException ex) {}
+            inputField.setToolTipText(preview.error);
+        };
+
+
+        // scrollable list of every function in its graph color; selecting one makes it current
+        graphingCanvas.functionListModel = new FunctionListModel();
+        JList < Function > functionList = new JList < > (graphingCanvas.functionListModel);
+        graphingCanvas.functionList = functionList;
+        functionList.setSelectionMode(ListSelectionModel.SINGLE_SELECTION);
+        functionList.setCellRenderer(new DefaultListCellRenderer() {
+            @Override
+            public Component getListCellRendererComponent(JList < ? > list, Object value, int index, boolean isSelected, boolean cellHasFocus) {
+                super.getListCellRendererComponent(list, "f" + index + "(x): " + ((Function) value).getExpression(), index, isSelected, cellHasFocus);
+                setForeground(isSelected ? list.getSelectionForeground() : graphColor(index));
+                return this;
+            }
+        });
+        functionList.addListSelectionListener(e -> {
+            int index = functionList.getSelectedIndex();
+            if (!e.getValueIsAdjusting() && index >= 0 && index != graphingCanvas.currentFunctionIndex) {
+                graphingCanvas.selectFunction(index);
+                graphingCanvas.requestFocusInWindow(); // keep the keyboard controls working
+            }
+        });
+        JScrollPane functionScroll = new JScrollPane(functionList);
+        functionScroll.setPreferredSize(new Dimension(200, height));
+
+
+        // value table next to the canvas; rows are only computed as they scroll into view
+        ValueTableModel tableModel = new ValueTableModel();
+        graphingCanvas.valueTable = tableModel;
+        JTable table = new JTable(tableModel);
+        JScrollPane tableScroll = new JScrollPane(table);
+        tableScroll.setPreferredSize(new Dimension(280, height));
+        // like a calculator's table setup: the x the table is centred on and the step between rows
+        JTextField tableCenter = new JTextField("0", 8);
+        JTextField tableStep = new JTextField("0.01", 8);
+        ActionListener tableSetup = e -> {
+            try {
+                double center = Double.parseDouble(tableCenter.getText().trim());
+                double step = Double.parseDouble(tableStep.getText().trim());
+                if (!Double.isFinite(center) || !(step > 0) || !Double.isFinite(ValueTableModel.ROWS_EACH_SIDE * step)) {
+                    throw new NumberFormatException();
+                }
+                tableModel.setRange(center - ValueTableModel.ROWS_EACH_SIDE * step, step, 2 * ValueTableModel.ROWS_EACH_SIDE + 1);
+                table.scrollRectToVisible(table.getCellRect(tableModel.rowOf(center), 0, true));
+            } catch (NumberFormatException ex) {
+                Toolkit.getDefaultToolkit().beep();
+            }
+        };
+        tableCenter.addActionListener(tableSetup);
+        tableStep.addActionListener(tableSetup);
+        JPanel tableSettings = new JPanel(new FlowLayout(FlowLayout.LEFT));
+        tableSettings.add(new JLabel("Center"));
+        tableSettings.add(tableCenter);
+        tableSettings.add(new JLabel("Step"));
+        tableSettings.add(tableStep);
+        JPanel tablePanel = new JPanel(new BorderLayout());
+        tablePanel.add(tableSettings, BorderLayout.NORTH);
+        tablePanel.add(tableScroll, BorderLayout.CENTER);
 
 
         frame.setLayout(new BorderLayout());
         frame.add(inputField, BorderLayout.NORTH);
         frame.add(graphingCanvas, BorderLayout.CENTER);
+        frame.add(functionScroll, BorderLayout.WEST);
+        frame.add(tablePanel, BorderLayout.EAST);
+        frame.setSize(width + 200 + 280, height);
         frame.setVisible(true);
         frame.setResizable(true);
+        table.scrollRectToVisible(table.getCellRect(tableModel.rowOf(0), 0, true));
     }
 
 
@@ -0,0 +1,198 @@
+import java.text.DecimalFormat;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import javax.swing.table.AbstractTableModel;
+
+
+/**
+ * A calculator-style TABLE view: rows of x, f0(x), f1(x), ... over a range of millions of rows.
+ * No row exists until the table asks for it. Rows are computed in blocks with one batch evaluation of
+ * the scene's fused kernel, recent blocks are kept in a small LRU cache, and the blocks around the
+ * last requested row are prefetched on a background thread, so scrolling stays smooth and memory
+ * stays bounded however large the range is.
+ */
+public class ValueTableModel extends AbstractTableModel {
+    private static final long serialVersionUID = 1L;
+    public static final int ROWS_EACH_SIDE = 1000000; // rows on each side of the x the table is centred on
+    private static final int BLOCK_ROWS = 256;
+    private static final int CACHE_BLOCKS = 64;
+    private static final int PREFETCH_BLOCKS = 2; // on each side of the block being viewed
+
+
+    private double step = 0.01;
+    private double start = -ROWS_EACH_SIDE * step;
+    private int rows = 2 * ROWS_EACH_SIDE + 1;
+
+
+    private List < TIUnNspired.Function > functions = new ArrayList < > ();
+    private FusedKernel kernel;
+    private int generation = 0; // bumped whenever the functions or the range change
+
+
+    // block index -> values[column][row in block]; column 0 holds x
+    private final Map < Integer, double[][] > cache = new LinkedHashMap < Integer, double[][] > (16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry < Integer, double[][] > eldest) {
+            return size() > CACHE_BLOCKS;
+        }
+    };
+    private final Set < Integer > pending = new HashSet < > ();
+    private final ExecutorService prefetcher = Executors.newSingleThreadExecutor(r -> {
+        Thread thread = new Thread(r, "value-table-prefetch");
+        thread.setDaemon(true);
+        return thread;
+    });
+    private final DecimalFormat format = new DecimalFormat("#.######");
+
+
+    /**
+     * Replaces the tabulated functions; kernel must be compiled from exactly this list.
+     * Must be called on the event dispatch thread.
+     */
+    public void setFunctions(List < TIUnNspired.Function > functions, FusedKernel kernel) {
+        synchronized(this) {
+            this.functions = new ArrayList < > (functions);
+            this.kernel = kernel;
+            invalidate();
+        }
+        fireTableStructureChanged();
+    }
+
+
+    /**
+     * Tabulates x = start, start + step, ... for the given number of rows.
+     * Must be called on the event dispatch thread.
+     */
+    public void setRange(double start, double step, int rows) {
+        synchronized(this) {
+            this.start = start;
+            this.step = step;
+            this.rows = rows;
+            invalidate();
+        }
+        fireTableDataChanged();
+    }
+
+
+    private void invalidate() {
+        generation++;
+        cache.clear();
+        pending.clear();
+    }
+
+
+    /**
+     * @return the row whose x is closest to the given value.
+     */
+    public synchronized int rowOf(double x) {
+        return (int) Math.max(0, Math.min(rows - 1, Math.round((x - start) / step)));
+    }
+
+
+    @Override
+    public synchronized int getRowCount() {
+        return rows;
+    }
+
+
+    @Override
+    public synchronized int getColumnCount() {
+        return functions.size() + 1;
+    }
+
+
+    @Override
+    public String getColumnName(int column) {
+        return column == 0 ? "x" : "f" + (column - 1) + "(x)";
+    }
+
+
+    @Override
+    public Class < ? > getColumnClass(int column) {
+        return String.class;
+    }
+
+
+    @Override
+    public Object getValueAt(int row, int column) {
+        double value = block(row / BLOCK_ROWS)[column][row % BLOCK_ROWS];
+        return Double.isNaN(value) ? "undefined" : format.format(value);
+    }
+
+
+    // Returns a block, computing it in place on a miss, and queues its neighbours for prefetching.
+    private double[][] block(int index) {
+        double[][] values;
+        FusedKernel kernel;
+        int generation;
+        synchronized(this) {
+            values = cache.get(index);
+            kernel = this.kernel;
+            generation = this.generation;
+        }
+        if (values == null) {
+            values = compute(index, kernel);
+            store(index, values, generation);
+        }
+        for (int offset = -PREFETCH_BLOCKS; offset <= PREFETCH_BLOCKS; offset++) {
+            prefetch(index + offset);
+        }
+        return values;
+    }
+
+
+    private synchronized void prefetch(int index) {
+        if (index < 0 || (long) index * BLOCK_ROWS >= rows || cache.containsKey(index) || !pending.add(index)) {
+            return;
+        }
+        FusedKernel kernel = this.kernel;
+        int generation = this.generation;
+        prefetcher.execute(() -> {
+            double[][] values = compute(index, kernel);
+            synchronized(this) {
+                pending.remove(index);
+            }
+            store(index, values, generation);
+        });
+    }
+
+
+    private synchronized void store(int index, double[][] values, int generation) {
+        if (generation == this.generation) { // drop blocks computed for an outdated scene or range
+            cache.put(index, values);
+        }
+    }
+
+
+    // One batch evaluation of every function over the block's x values.
+    private double[][] compute(int index, FusedKernel kernel) {
+        double start, step;
+        int rows;
+        synchronized(this) {
+            start = this.start;
+            step = this.step;
+            rows = this.rows;
+        }
+        int first = index * BLOCK_ROWS;
+        int count = Math.max(0, Math.min(BLOCK_ROWS, rows - first));
+        double[] xs = new double[count];
+        for (int i = 0; i < count; i++) {
+            xs[i] = start + (first + i) * step;
+        }
+        int functionCount = kernel == null ? 0 : kernel.functionCount();
+        double[][] values = new double[functionCount + 1][];
+        values[0] = xs;
+        if (functionCount > 0 && count > 0) {
+            System.arraycopy(kernel.evaluate(xs), 0, values, 1, functionCount);
+        } else {
+            for (int k = 1; k <= functionCount; k++) values[k] = new double[count];
+        }
+        return values;
+    }
+}
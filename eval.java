@@ -1,5 +1,6 @@
 import java.util.*;
 import java.util.function.DoubleUnaryOperator;
+import java.util.function.Predicate;
 
 
 public class eval {
@@ -7,12 +8,20 @@ public class eval {
 
     private static final Set < String > FUNCTIONS = Set.of("sin", "cos", "tan", "ln", "sqrt", "cbrt", "abs", "arctan", "arccos", "arcsin");
     private static final Set < Character > OPERATORS = Set.of('+', '-', '*', '/', '^');
+    static final Set < String > VARIABLES = Set.of("x", "y", "t"); // t is the parameter of parametric and polar curves
 
 
     // Tokenizes the input expression
     static ArrayList < String > tokenize(String expression) {
+        return tokenize(expression, null);
+    }
+
+
+    // Tokenizes the input expression; if offsets is not null, it receives the index where each token starts
+    static ArrayList < String > tokenize(String expression, List < Integer > offsets) {
         ArrayList < String > tokens = new ArrayList < > ();
         StringBuilder token = new StringBuilder();
+        int start = 0; // where the token being built starts
 
 
         for (int i = 0; i < expression.length(); i++) {
@@ -26,24 +35,26 @@ public class eval {
 
             // If it's a minus sign and it's followed by a digit or period (like 0-x)
             if (c == '-' && (i == 0 || OPERATORS.contains(expression.charAt(i - 1)) || expression.charAt(i - 1) == '(' || FUNCTIONS.contains(expression.charAt(i - 1)))) {
+                if (token.length() == 0) start = i;
                 token.append(c); // Treat as negative sign (unary minus)
             } else if (Character.isDigit(c) || c == '.') {
                 // Build numeric tokens
+                if (token.length() == 0) start = i;
                 token.append(c);
             } else if (Character.isLetter(c)) {
                 // Build variable or function tokens
                 if (token.length() > 0 && !Character.isLetter(token.charAt(0))) {
-                    tokens.add(token.toString());
-                    token.setLength(0);
+                    addToken(tokens, offsets, token, start);
                 }
+                if (token.length() == 0) start = i;
                 token.append(c);
             } else if (OPERATORS.contains(c) || c == '(' || c == ')') {
                 // Add existing token before operator or parentheses
                 if (token.length() > 0) {
-                    tokens.add(token.toString());
-                    token.setLength(0);
+                    addToken(tokens, offsets, token, start);
                 }
                 tokens.add(String.valueOf(c)); // Add operator or parenthesis as a token
+                if (offsets != null) offsets.add(i);
             } else {
                 throw new IllegalArgumentException("Unexpected character: " + c);
             }
@@ -51,15 +62,14 @@ public class eval {
 
             // If the token is complete, add it to the tokens list
             if (token.length() > 0 && (i == expression.length() - 1 || OPERATORS.contains(c) || c == '(' || c == ')')) {
-                tokens.add(token.toString());
-                token.setLength(0);
+                addToken(tokens, offsets, token, start);
             }
         }
 
 
         // Add the final token if it exists
         if (token.length() > 0) {
-            tokens.add(token.toString());
+            addToken(tokens, offsets, token, start);
         }
 
 
@@ -67,37 +77,60 @@ public class eval {
     }
 
 
+    private static void addToken(List < String > tokens, List < Integer > offsets, StringBuilder token, int start) {
+        tokens.add(token.toString());
+        if (offsets != null) offsets.add(start);
+        token.setLength(0);
+    }
+
+
     // Converts infix notation to postfix (RPN)
     static ArrayList < String > toPostfix(List < String > tokens) {
+        return toPostfix(tokens, null, false);
+    }
+
+
+    // Converts infix notation to postfix (RPN); if origins is not null, it receives the index of the
+    // input token each output token came from. With allowNames, other identifiers are kept for the
+    // compiler to resolve: a name followed by '(' is a call and comes out as "name(", any other name
+    // is an operand.
+    static ArrayList < String > toPostfix(List < String > tokens, List < Integer > origins, boolean allowNames) {
         ArrayList < String > output = new ArrayList < > ();
-        Stack < String > operators = new Stack < > ();
+        Stack < Integer > operators = new Stack < > (); // indices into tokens
 
 
-        for (String token: tokens) {
-            if (isNumber(token) || token.equals("x") || token.equals("e") || token.equals("p")) {
-                output.add(token); // Add numbers and variables directly to output
-            } else if (FUNCTIONS.contains(token)) {
-                operators.push(token); // Push functions onto the stack
+        for (int i = 0; i < tokens.size(); i++) {
+            String token = tokens.get(i);
+            boolean name = allowNames && isName(token);
+            if (isNumber(token) || VARIABLES.contains(token) || token.equals("e") || token.equals("p") ||
+                (name && !(i + 1 < tokens.size() && tokens.get(i + 1).equals("(")))) {
+                emit(output, origins, tokens, i); // Add numbers, variables and names directly to output
+            } else if (FUNCTIONS.contains(token) || name) {
+                operators.push(i); // Push functions and calls onto the stack
             } else if (OPERATORS.contains(token.charAt(0))) {
                 // Handle operators
                 while (!operators.isEmpty() &&
-                    precedence(operators.peek()) >= precedence(token)) {
-                    output.add(operators.pop());
+                    precedence(tokens.get(operators.peek())) >= precedence(token)) {
+                    emit(output, origins, tokens, operators.pop());
                 }
-                operators.push(token);
+                operators.push(i);
             } else if (token.equals("(")) {
-                operators.push(token); // Push '(' onto the stack
+                operators.push(i); // Push '(' onto the stack
             } else if (token.equals(")")) {
                 // Pop until '(' is found
-                while (!operators.isEmpty() && !operators.peek().equals("(")) {
-                    output.add(operators.pop());
+                while (!operators.isEmpty() && !tokens.get(operators.peek()).equals("(")) {
+                    emit(output, origins, tokens, operators.pop());
                 }
                 if (operators.isEmpty()) {
                     throw new IllegalArgumentException("Mismatched parentheses");
                 }
                 operators.pop(); // Remove '('
-                if (!operators.isEmpty() && FUNCTIONS.contains(operators.peek())) {
-                    output.add(operators.pop()); // Add function to output
+                if (!operators.isEmpty() && FUNCTIONS.contains(tokens.get(operators.peek()))) {
+                    emit(output, origins, tokens, operators.pop()); // Add function to output
+                } else if (allowNames && !operators.isEmpty() && isName(tokens.get(operators.peek()))) {
+                    int call = operators.pop();
+                    output.add(tokens.get(call) + "("); // Add call to output
+                    if (origins != null) origins.add(call);
                 }
             } else {
                 throw new IllegalArgumentException("Unknown token: " + token);
@@ -107,11 +140,11 @@ public class eval {
 
         // Add remaining operators to output
         while (!operators.isEmpty()) {
-            String op = operators.pop();
-            if (op.equals("(") || op.equals(")")) {
+            int op = operators.pop();
+            if (tokens.get(op).equals("(") || tokens.get(op).equals(")")) {
                 throw new IllegalArgumentException("Mismatched parentheses");
             }
-            output.add(op);
+            emit(output, origins, tokens, op);
         }
 
 
@@ -119,6 +152,103 @@ public class eval {
     }
 
 
+    /**
+     * @return whether the token is an identifier that is not built in, i.e. the name of a definition
+     * or of a plotted function such as f0.
+     */
+    static boolean isName(String token) {
+        if (token.isEmpty() || !Character.isLetter(token.charAt(0)) || FUNCTIONS.contains(token) || VARIABLES.contains(token) || isNumber(token)) {
+            return false;
+        }
+        for (int i = 1; i < token.length(); i++) {
+            if (!Character.isLetterOrDigit(token.charAt(i))) return false;
+        }
+        return true;
+    }
+
+
+    private static void emit(List < String > output, List < Integer > origins, List < String > tokens, int index) {
+        output.add(tokens.get(index));
+        if (origins != null) origins.add(index);
+    }
+
+
+    /**
+     * Locates the token an invalid expression should be reported at, by running the tokenizer and
+     * the shunting-yard pass with source positions and then checking operand counts the way
+     * evaluatePostfix would.
+     *
+     * @param names     tells which names can be resolved, or null if names are not allowed
+     * @param variables the variables the expression may use
+     * @return {start, end} of the offending characters, or null if the expression is valid
+     */
+    static int[] errorSpan(String expression, Predicate < String > names, String...variables) {
+        for (int i = 0; i < expression.length(); i++) {
+            char c = expression.charAt(i);
+            if (!Character.isWhitespace(c) && !Character.isLetterOrDigit(c) && c != '.' && !OPERATORS.contains(c) && c != '(' && c != ')') {
+                return new int[] {
+                    i, i + 1
+                };
+            }
+        }
+        List < Integer > offsets = new ArrayList < > ();
+        List < String > tokens = tokenize(expression, offsets);
+
+
+        // the cases toPostfix rejects: unknown tokens and unbalanced parentheses
+        Stack < Integer > open = new Stack < > ();
+        for (int i = 0; i < tokens.size(); i++) {
+            String token = tokens.get(i);
+            boolean known = isNumber(token) || VARIABLES.contains(token) || FUNCTIONS.contains(token) || OPERATORS.contains(token.charAt(0)) ||
+                token.equals("(") || token.equals(")") || (names != null && isName(token));
+            if (!known || (token.equals(")") && open.isEmpty())) {
+                return span(offsets, tokens, i);
+            }
+            if (token.equals("(")) open.push(i);
+            if (token.equals(")")) open.pop();
+        }
+        if (!open.isEmpty()) {
+            return span(offsets, tokens, open.peek());
+        }
+
+
+        // each stack entry is the token that produced the value, so leftovers can be pointed at
+        List < Integer > origins = new ArrayList < > ();
+        List < String > postfix = toPostfix(tokens, origins, names != null);
+        List < String > allowed = List.of(variables);
+        Stack < Integer > stack = new Stack < > ();
+        for (int j = 0; j < postfix.size(); j++) {
+            String token = postfix.get(j);
+            int origin = origins.get(j);
+            boolean call = token.endsWith("(");
+            String name = call ? token.substring(0, token.length() - 1) : token;
+            boolean resolved = allowed.contains(token) || (isName(name) && names != null && names.test(name));
+            if (!resolved && (call || VARIABLES.contains(token) || isName(token))) {
+                return span(offsets, tokens, origin); // a variable out of scope or an unknown name
+            }
+            int operands = isNumber(token) || VARIABLES.contains(token) || (isName(token) && !call) ? 0 : FUNCTIONS.contains(token) || token.equals("-") || call ? 1 : 2;
+            if (stack.size() < operands) {
+                return span(offsets, tokens, origin);
+            }
+            for (int k = 0; k < operands; k++) stack.pop();
+            stack.push(origin);
+        }
+        if (stack.isEmpty()) {
+            return new int[] {
+                0, expression.length()
+            };
+        }
+        return stack.size() > 1 ? span(offsets, tokens, stack.get(1)) : null;
+    }
+
+
+    private static int[] span(List < Integer > offsets, List < String > tokens, int index) {
+        return new int[] {
+            offsets.get(index), offsets.get(index) + tokens.get(index).length()
+        };
+    }
+
+
     // Evaluates an expression in postfix notation
     private static double evaluatePostfix(List < String > postfix, double x) {
         Stack < Double > stack = new Stack < > ();
@@ -133,6 +263,8 @@ public class eval {
                 stack.push(Math.PI);
             } else if (token.equals("x")) {
                 stack.push(x);
+            } else if (VARIABLES.contains(token)) {
+                throw new IllegalArgumentException("Unknown variable: " + token);
             } else if (FUNCTIONS.contains(token)) {
                 if (stack.isEmpty()) {
                     throw new IllegalArgumentException("Missing operand for function " + token);
@@ -167,17 +299,17 @@ public class eval {
     private static double applyFunction(String
         function, double value) {
         return switch (function) {
-            case "sin" - > Math.sin(value);
-            case "cos" - > Math.cos(value);
-            case "tan" - > Math.tan(value);
-            case "ln" - > Math.log(value);
-            case "sqrt" - > Math.sqrt(value);
-            case "cbrt" - > Math.cbrt(value);
-            case "abs" - > Math.abs(value);
-            case "arctan" - > Math.atan(value);
-            case "arcsin" - > Math.asin(value);
-            case "arccos" - > Math.acos(value);
-            default - >
+            case "sin" -> Math.sin(value);
+            case "cos" -> Math.cos(value);
+            case "tan" -> Math.tan(value);
+            case "ln" -> Math.log(value);
+            case "sqrt" -> Math.sqrt(value);
+            case "cbrt" -> Math.cbrt(value);
+            case "abs" -> Math.abs(value);
+            case "arctan" -> Math.atan(value);
+            case "arcsin" -> Math.asin(value);
+            case "arccos" -> Math.acos(value);
+            default ->
             throw new IllegalArgumentException("Unknown function: " + function);
         };
     }
@@ -185,18 +317,18 @@ public class eval {
 
     private static double applyOperator(String operator, double a, double b) {
         return switch (operator) {
-            case "+" - > a + b;
-            case "-" - > a - b;
-            case "*" - > a * b;
-            case "/" - > a / b;
-            case "^" - > Math.pow(a, b);
-            default - >
+            case "+" -> a + b;
+            case "-" -> a - b;
+            case "*" -> a * b;
+            case "/" -> a / b;
+            case "^" -> Math.pow(a, b);
+            default ->
             throw new IllegalArgumentException("Unknown operator: " + operator);
         };
     }
 
 
-    private static boolean isNumber(String token) {
+    static boolean isNumber(String token) {
         if (token.equals("e") || token.equals("p")) {
             return true;
         }
@@ -211,10 +343,10 @@ public class eval {
 
     private static int precedence(String operator) {
         return switch (operator) {
-            case "+", "-" - > 1;
-            case "*", "/" - > 2;
-            case "^" - > 3;
-            default - > 0;
+            case "+", "-" -> 1;
+            case "*", "/" -> 2;
+            case "^" -> 3;
+            default -> 0;
         };
     }
 
@@ -222,7 +354,7 @@ public class eval {
     public static DoubleUnaryOperator parseExpression(String expression) {
         List < String > tokens = tokenize(expression);
         List < String > postfix = toPostfix(tokens);
-        return x - > evaluatePostfix(postfix, x);
+        return x -> evaluatePostfix(postfix, x);
     }
 
 
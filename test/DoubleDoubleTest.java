@@ -0,0 +1,61 @@
+import java.math.BigDecimal;
+import java.math.MathContext;
+
+
+/**
+ * Checks the double-double arithmetic and elementary functions against 50-digit reference values:
+ * each result must be within a few units of 2^-104 of the exact value.
+ * Run with: java -cp out DoubleDoubleTest
+ */
+public class DoubleDoubleTest {
+    private static final double TOLERANCE = 1e-30; // relative
+    private static final String PI = "3.14159265358979323846264338327950288419716939937510";
+    private static final String SQRT2 = "1.41421356237309504880168872420969807856967187537694";
+    private static int failures;
+
+
+    public static void main(String[] args) {
+        DoubleDouble two = DoubleDouble.valueOf(2);
+        DoubleDouble half = DoubleDouble.parse("0.5");
+        check("0.1", DoubleDouble.parse("0.1"), "0.1");
+        check("1/3", DoubleDouble.ONE.divide(DoubleDouble.valueOf(3)), "0.33333333333333333333333333333333333333333333333333");
+        check("(1 + 2^-70) - 1", DoubleDouble.ONE.add(Math.scalb(1.0, -70)).subtract(DoubleDouble.ONE), new BigDecimal(Math.scalb(1.0, -70)).toString());
+        check("0.1 * 3", DoubleDouble.parse("0.1").multiply(3), "0.3");
+        check("sqrt(2)", two.sqrt(), SQRT2);
+        check("2^0.5", two.pow(half), SQRT2);
+        check("cbrt(2)", two.cbrt(), "1.25992104989487316476721060727822835057025146470151");
+        check("exp(1)", DoubleDouble.ONE.exp(), "2.71828182845904523536028747135266249775724709369995");
+        check("exp(-5)", DoubleDouble.valueOf(-5).exp(), "0.0067379469990854670966360484231484242488495850273551");
+        check("ln(2)", two.log(), "0.69314718055994530941723212145817656807550013436026");
+        check("sin(1)", DoubleDouble.ONE.sin(), "0.84147098480789650665250232163029899962256306079837");
+        check("cos(1)", DoubleDouble.ONE.cos(), "0.54030230586813971740093660744297660373231042061792");
+        check("tan(1)", DoubleDouble.ONE.tan(), "1.5574077246549022305069748074583601730872507723815");
+        check("sin(100)", DoubleDouble.valueOf(100).sin(), "-0.50636564110975879365655761045978543206503272129066");
+        check("4 atan(1)", DoubleDouble.ONE.atan().multiply(4), PI);
+        check("6 asin(0.5)", half.asin().multiply(6), PI);
+        check("3 acos(0.5)", half.acos().multiply(3), PI);
+        check("(-8)^3", DoubleDouble.valueOf(-8).pow(DoubleDouble.valueOf(3)), "-512");
+
+
+        if (!DoubleDouble.PI.toString(30).equals("3.14159265358979323846264338328")) {
+            failures++;
+            System.out.println("FAILED pi to 30 digits: " + DoubleDouble.PI.toString(30));
+        }
+        if (failures > 0) {
+            System.out.println(failures + " failures");
+            System.exit(1);
+        }
+        System.out.println("DoubleDoubleTest passed");
+    }
+
+
+    private static void check(String what, DoubleDouble actual, String expected) {
+        BigDecimal exact = new BigDecimal(expected);
+        BigDecimal error = new BigDecimal(actual.hi).add(new BigDecimal(actual.lo)).subtract(exact).abs();
+        double relative = error.divide(exact.abs(), MathContext.DECIMAL64).doubleValue();
+        if (!(relative <= TOLERANCE)) {
+            failures++;
+            System.out.println("FAILED " + what + ": " + actual.toString(32) + ", relative error " + relative);
+        }
+    }
+}
@@ -0,0 +1,96 @@
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.function.DoubleUnaryOperator;
+
+
+/**
+ * Checks that the fused kernel computes exactly what eval computes for each expression on its own,
+ * both in one batch over all functions and point by point, and that its double-double pass agrees
+ * with the double one.
+ * Run with: java -cp out FusedKernelTest
+ */
+public class FusedKernelTest {
+    private static final String[] EXPRESSIONS = {
+        "sin(x)+1",
+        "2*sin(x)",
+        "x^2+3*x",
+        "-x^2",
+        "-sin(x)",
+        "x^2^2",
+        "(x+1)*(x+2)",
+        "x*2+2*x",
+        "0.1*x",
+        "ln(x)",
+        "sqrt(abs(x))",
+        "cbrt(x)*x",
+        "arctan(x)+arcsin(x/10)+arccos(x/10)",
+        "tan(x)/x",
+        "2^x",
+        "x^(1/3)",
+        "e^x+p",
+        "1/(x^2+-4)"
+    };
+    private static int failures;
+
+
+    public static void main(String[] args) {
+        double[] xs = new double[1000]; // more than one parallel chunk
+        Random random = new Random(1);
+        for (int i = 0; i < xs.length; i++) {
+            xs[i] = random.nextDouble() * 20 - 10;
+        }
+        xs[0] = 0;
+        xs[1] = 2; // a pole of the last expression
+
+
+        List < TIUnNspired.Function > functions = new ArrayList < > ();
+        for (String expression: EXPRESSIONS) {
+            functions.add(new TIUnNspired.Function(expression));
+        }
+        FusedKernel fused = FusedKernel.compile(functions);
+        double[][] ys = fused.evaluate(xs);
+        DoubleDouble[] exactXs = new DoubleDouble[xs.length];
+        for (int i = 0; i < xs.length; i++) {
+            exactXs[i] = DoubleDouble.valueOf(xs[i]);
+        }
+        DoubleDouble[][] exactYs = fused.evaluate(exactXs);
+
+
+        for (int k = 0; k < EXPRESSIONS.length; k++) {
+            DoubleUnaryOperator reference = eval.parseExpression(EXPRESSIONS[k]);
+            FusedKernel single = FusedKernel.compilePrograms(List.of(eval.toPostfix(eval.tokenize(EXPRESSIONS[k]))), "x");
+            for (int i = 0; i < xs.length; i++) {
+                double expected = reference.applyAsDouble(xs[i]);
+                check(Double.compare(expected, ys[k][i]) == 0, EXPRESSIONS[k] + " fused at " + xs[i], expected, ys[k][i]);
+                check(Double.compare(expected, single.valueAt(xs[i])) == 0, EXPRESSIONS[k] + " alone at " + xs[i], expected, single.valueAt(xs[i]));
+                double exact = exactYs[k][i].doubleValue();
+                boolean close = Double.isNaN(expected) ? Double.isNaN(exact) :
+                    Double.isInfinite(expected) ? Math.abs(exact) > 1e300 || Double.isInfinite(exact) :
+                    Math.abs(exact - expected) <= 1e-12 * Math.max(1, Math.abs(expected));
+                check(close, EXPRESSIONS[k] + " double-double at " + xs[i], expected, exact);
+            }
+        }
+
+
+        // shared subexpressions do not change the result
+        double[][] shared = FusedKernel.compile(List.of(new TIUnNspired.Function("sin(x)*2"), new TIUnNspired.Function("sin(x)+2"))).evaluate(xs);
+        for (int i = 0; i < xs.length; i++) {
+            check(shared[0][i] == Math.sin(xs[i]) * 2 && shared[1][i] == Math.sin(xs[i]) + 2, "shared sin(x) at " + xs[i], Math.sin(xs[i]), shared[0][i] / 2);
+        }
+
+
+        if (failures > 0) {
+            System.out.println(failures + " failures");
+            System.exit(1);
+        }
+        System.out.println("FusedKernelTest passed");
+    }
+
+
+    private static void check(boolean condition, String what, double expected, double actual) {
+        if (!condition && failures++ < 20) {
+            System.out.println("FAILED " + what + ": expected " + expected + ", got " + actual);
+        }
+    }
+}
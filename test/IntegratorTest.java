@@ -0,0 +1,67 @@
+import java.util.Arrays;
+import java.util.List;
+import java.util.function.DoubleUnaryOperator;
+
+
+/**
+ * Checks the adaptive quadrature against integrals known in closed form, the signed pieces between
+ * breakpoints, and that a divergent integrand is reported as not converged.
+ * Run with: java -cp out IntegratorTest
+ */
+public class IntegratorTest {
+    private static final Integrator integrator = new Integrator(1e-8, 1e-10, 200000); // as for the canvas
+    private static int failures;
+
+
+    public static void main(String[] args) {
+        Integrator.Result polynomial = integrator.integrate(of(x -> x * x), new double[] {0, 3});
+        check(polynomial.converged && Math.abs(polynomial.value - 9) < 1e-12, "x^2 over [0, 3]: " + polynomial.value);
+        check(polynomial.evaluations <= 15, "a polynomial needs one panel: " + polynomial.evaluations);
+
+
+        Integrator.Result sine = integrator.integrate(of(Math::sin), Integrator.breakpoints(0, 2 * Math.PI, List.of(Math.PI)));
+        check(Math.abs(sine.value) < 1e-10, "sin(x) over [0, 2pi]: " + sine.value);
+        check(sine.pieces.length == 2 && Math.abs(sine.pieces[0] - 2) < 1e-8 && Math.abs(sine.pieces[1] + 2) < 1e-8,
+            "signed pieces of sin(x) split at pi: " + Arrays.toString(sine.pieces));
+        check(Math.abs(sine.area() - 4) < 1e-8, "area of sin(x) over [0, 2pi]: " + sine.area());
+
+
+        Integrator.Result peak = integrator.integrate(of(x -> 1 / (1e-4 + x * x)), new double[] {-1, 1});
+        double exact = 2 * Math.atan(100) * 100;
+        check(peak.converged && Math.abs(peak.value - exact) < 1e-8 * exact, "sharp peak: " + peak.value + ", expected " + exact);
+
+
+        Integrator.Result pole = integrator.integrate(of(x -> 1 / x), new double[] {0, 1});
+        check(!pole.converged, "1/x over [0, 1] reported as converged: " + pole.value);
+
+
+        check(Arrays.equals(Integrator.breakpoints(0, 1, List.of(-1.0, 0.5, 0.25, 2.0)), new double[] {0, 0.25, 0.5, 1}),
+            "breakpoints keep the sorted roots inside the range");
+
+
+        if (failures > 0) {
+            System.out.println(failures + " failures");
+            System.exit(1);
+        }
+        System.out.println("IntegratorTest passed");
+    }
+
+
+    private static Integrator.Integrand of(DoubleUnaryOperator f) {
+        return xs -> {
+            double[] ys = new double[xs.length];
+            for (int i = 0; i < xs.length; i++) {
+                ys[i] = f.applyAsDouble(xs[i]);
+            }
+            return ys;
+        };
+    }
+
+
+    private static void check(boolean condition, String what) {
+        if (!condition) {
+            failures++;
+            System.out.println("FAILED " + what);
+        }
+    }
+}
@@ -0,0 +1,88 @@
+import java.util.List;
+import java.util.function.DoubleUnaryOperator;
+import java.util.function.UnaryOperator;
+
+
+/**
+ * Checks that findAllRoots finds pairs of roots closer together than its subintervals, roots that
+ * land on a sample, and double roots where the function only touches zero, but no made-up roots
+ * next to poles.
+ * Run with: java -cp out RootFinderTest
+ */
+public class RootFinderTest {
+    private static final RootFinder rootFinder = new RootFinder(1e-15, 1e-17, 1e-17);
+    private static int failures;
+
+
+    public static void main(String[] args) {
+        // a pair on either side of the middle of the subinterval [1, 1.01], and the pair from the review
+        roots("(-1.004+x)*(-1.006+x)", 0, 2, 200, 1.004, 1.006);
+        roots("(-1+x)*(-1.001+x)", -5, 5, 1000, 1, 1.001);
+        roots("(-1+x)*(-1.001+x)", 0, 2, 200, 1, 1.001);
+        // exactly zero at the middle of the only subinterval, with no sign change
+        roots("(-0.5+x)^2", 0, 1, 1, 0.5);
+        roots("-0.5+x", 0, 1, 1, 0.5);
+        // tangencies
+        roots("x^2", -1, 2, 300, 0);
+        roots("(-0.123+x)^2", -1, 2, 300, 0.123);
+        roots("sin(x)^2", -10, 10, 1000, -3 * Math.PI, -2 * Math.PI, -Math.PI, 0, Math.PI, 2 * Math.PI, 3 * Math.PI);
+        roots("1+x^2", -10, 10, 1000);
+        // deep zoom: a pair in adjacent cells, closer together than half the spacing
+        DoubleDouble first = DoubleDouble.valueOf(1.0049), second = DoubleDouble.valueOf(1.0051);
+        UnaryOperator < DoubleDouble > pair = x -> x.subtract(first).multiply(x.subtract(second));
+        DoubleDouble[] xs = new DoubleDouble[2001], ys = new DoubleDouble[xs.length];
+        for (int i = 0; i < xs.length; i++) {
+            xs[i] = DoubleDouble.valueOf(i * 0.001);
+            ys[i] = pair.apply(xs[i]);
+        }
+        List < DoubleDouble > deep = new RootFinder(1e-30, 1e-40, 1e-40).findAllRoots(pair, xs, ys);
+        check(deep.size() == 2 && deep.get(0).subtract(first).abs().doubleValue() < 1e-25 && deep.get(1).subtract(second).abs().doubleValue() < 1e-25,
+            "deep zoom pair: " + deep);
+        // a pole or an undefined end is no reason to accept a minimum as a tangency
+        noRoot(x -> 1 / (x * x), 0, 1);
+        noRoot(x -> Math.sqrt(x) + 1, -1, 1);
+        noRoot(x -> 1 / x, 0, 1);
+        roots("1/(x^2)", -1, 1, 100);
+        check(!RootFinder.isDip(Double.POSITIVE_INFINITY, 1, 2), "a dip next to a pole");
+        check(!RootFinder.isDip(Double.NaN, 1, 2), "a dip next to an undefined sample");
+
+
+        if (failures > 0) {
+            System.out.println(failures + " failures");
+            System.exit(1);
+        }
+        System.out.println("RootFinderTest passed");
+    }
+
+
+    private static void noRoot(DoubleUnaryOperator func, double min, double max) {
+        try {
+            double root = rootFinder.findRoot(func, min, max);
+            check(false, "no root expected in [" + min + ", " + max + "], found " + root + " with f = " + func.applyAsDouble(root));
+        } catch (IllegalArgumentException expected) {
+            // no bracket and no tangency
+        }
+    }
+
+
+    private static void check(boolean condition, String what) {
+        if (!condition) {
+            failures++;
+            System.out.println("FAILED " + what);
+        }
+    }
+
+
+    private static void roots(String expression, double min, double max, int subintervals, double...expected) {
+        TIUnNspired.Function function = new TIUnNspired.Function(expression);
+        List < Double > found = rootFinder.findAllRoots(function::evaluate, min, max, subintervals);
+        boolean same = found.size() == expected.length;
+        for (int i = 0; same && i < expected.length; i++) {
+            same = Math.abs(found.get(i) - expected[i]) <= 1e-7; // tangencies are only located to about sqrt(ulp)
+        }
+        if (!same) {
+            failures++;
+            System.out.println("FAILED roots of " + expression + " over [" + min + ", " + max + "] in " + subintervals + ": " + found);
+        }
+    }
+}
@@ -0,0 +1,92 @@
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+
+/**
+ * Checks that the roots a tracker carries across pans and zooms are the ones a fresh search of the
+ * same view finds, that functions which coincide over a stretch yield no points there, and that
+ * roots at the edges of the view or closer together than the samples are found.
+ * Run with: java -cp out RootTrackerTest
+ */
+public class RootTrackerTest {
+    private static final int SAMPLES = 2001; // as for the canvas
+    private static int failures;
+
+
+    public static void main(String[] args) {
+        List < TIUnNspired.Function > functions = List.of(
+            new TIUnNspired.Function("sin(x)"),
+            new TIUnNspired.Function("x^3"),
+            new TIUnNspired.Function("0.1*x^2"),
+            new TIUnNspired.Function("cos(3*x)+0.5"),
+            new TIUnNspired.Function("sin(x)^2"));
+        FusedKernel kernel = FusedKernel.compile(functions);
+        RootTracker tracker = new RootTracker();
+        Random random = new Random(7);
+        double center = 0, width = 20;
+        for (int step = 0; step < 60; step++) {
+            if (random.nextInt(3) == 0) {
+                width *= random.nextBoolean() ? 2 : 0.5; // zoom
+            } else {
+                center += (random.nextDouble() - 0.5) * width; // pan
+            }
+            for (int current = 0; current < functions.size(); current++) {
+                Map < Integer, List < Double > > warm = tracker.update(functions, current, kernel, center - width / 2, center + width / 2, SAMPLES);
+                Map < Integer, List < Double > > fresh = new RootTracker().update(functions, current, kernel, center - width / 2, center + width / 2, SAMPLES);
+                for (Map.Entry < Integer, List < Double > > entry: fresh.entrySet()) {
+                    String what = "step " + step + ", f" + current + " against " + (entry.getKey() == RootTracker.AXIS ? "the axis" : "f" + entry.getKey());
+                    check(same(warm.get(entry.getKey()), entry.getValue()), what + ": tracked " + warm.get(entry.getKey()) + ", fresh " + entry.getValue());
+                }
+            }
+        }
+
+
+        // a function that is zero everywhere, and two equal functions, have no single points of interest
+        List < TIUnNspired.Function > coincident = List.of(new TIUnNspired.Function("0*x"), new TIUnNspired.Function("sin(x)"), new TIUnNspired.Function("sin(x)"));
+        FusedKernel coincidentKernel = FusedKernel.compile(coincident);
+        Map < Integer, List < Double > > zero = new RootTracker().update(coincident, 0, coincidentKernel, -10, 10, SAMPLES);
+        check(zero.get(RootTracker.AXIS).isEmpty(), "zeros of 0*x: " + zero.get(RootTracker.AXIS));
+        Map < Integer, List < Double > > equal = new RootTracker().update(coincident, 1, coincidentKernel, -10, 10, SAMPLES);
+        check(equal.get(2).isEmpty(), "intersections of sin(x) with itself: " + equal.get(2));
+        check(equal.get(RootTracker.AXIS).size() == 7, "zeros of sin(x) over [-10, 10]: " + equal.get(RootTracker.AXIS));
+
+
+        // tangencies just inside either edge of the view, where the dip is at the first or last sample,
+        // and a pair of roots closer together than the samples
+        List < TIUnNspired.Function > edges = List.of(new TIUnNspired.Function("(-0.0003+x)^2"), new TIUnNspired.Function("(-19.9997+x)^2"),
+            new TIUnNspired.Function("(-10.004+x)*(-10.006+x)"));
+        FusedKernel edgesKernel = FusedKernel.compile(edges);
+        check(same(new RootTracker().update(edges, 0, edgesKernel, 0, 20, SAMPLES).get(RootTracker.AXIS), List.of(0.0003)), "tangency at the left edge");
+        check(same(new RootTracker().update(edges, 1, edgesKernel, 0, 20, SAMPLES).get(RootTracker.AXIS), List.of(19.9997)), "tangency at the right edge");
+        check(same(new RootTracker().update(edges, 2, edgesKernel, 0, 20, SAMPLES).get(RootTracker.AXIS), List.of(10.004, 10.006)), "close pair");
+
+
+        if (failures > 0) {
+            System.out.println(failures + " failures");
+            System.exit(1);
+        }
+        System.out.println("RootTrackerTest passed");
+    }
+
+
+    // Tangencies are only located to about sqrt(ulp), so roots may differ by a little more than that.
+    private static boolean same(List < Double > a, List < Double > b) {
+        if (a == null || a.size() != b.size()) {
+            return false;
+        }
+        for (int i = 0; i < a.size(); i++) {
+            if (Math.abs(a.get(i) - b.get(i)) > 1e-7 * Math.max(1, Math.abs(b.get(i)))) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+
+    private static void check(boolean condition, String what) {
+        if (!condition && failures++ < 20) {
+            System.out.println("FAILED " + what);
+        }
+    }
+}